@@ -0,0 +1,171 @@
+package com.github.gemba.artifactresolver.benchmarks;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.slf4j.LoggerFactory;
+
+import com.github.gemba.artifactresolver.Checksums;
+import com.github.gemba.artifactresolver.RepositorySystemHelper;
+
+/**
+ * A synthetic maven repository on the local file system. The artifacts form
+ * <code>depth</code> layers of <code>width</code> artifacts, each artifact
+ * depends on two artifacts of the next layer. The root artifact depends on
+ * the whole first layer. Every artifact has a jar, a sources jar and SHA-1
+ * checksums, no artifact has a javadoc jar.
+ *
+ * @author Gemba
+ */
+public class FixtureRepository {
+
+  public static final String GROUP_ID = "bench.fixture";
+
+  private static final String VERSION = "1.0";
+
+  private final File basedir;
+  private final int width;
+  private final int depth;
+
+  /**
+   * Writes the repository.
+   *
+   * @param basedir
+   *          the directory of the repository, will be replaced
+   * @param width
+   *          number of artifacts per layer
+   * @param depth
+   *          number of layers
+   * @throws IOException
+   *           if the repository is not writable
+   */
+  public FixtureRepository(File basedir, int width, int depth) throws IOException {
+    this.basedir = basedir;
+    this.width = width;
+    this.depth = depth;
+
+    FileUtils.deleteDirectory(basedir);
+    byte[] jar = newJar();
+
+    for (int layer = 0; layer < depth; layer++) {
+      for (int i = 0; i < width; i++) {
+        List<String> dependencies = new ArrayList<String>();
+        if (layer + 1 < depth) {
+          dependencies.add(artifactId(layer + 1, i));
+          dependencies.add(artifactId(layer + 1, (i + 1) % width));
+        }
+        writeArtifact(artifactId(layer, i), dependencies, jar);
+      }
+    }
+
+    List<String> firstLayer = new ArrayList<String>();
+    for (int i = 0; i < width; i++) {
+      firstLayer.add(artifactId(0, i));
+    }
+    writeArtifact("root", firstLayer, jar);
+  }
+
+  /**
+   * @return the artifact depending on all others
+   */
+  public DefaultArtifact getRoot() {
+    return new DefaultArtifact(GROUP_ID, "root", "jar", VERSION);
+  }
+
+  /**
+   * @return the coordinates of all artifacts but the root
+   */
+  public List<String> getCoordinates() {
+    List<String> coordinates = new ArrayList<String>();
+    for (int layer = 0; layer < depth; layer++) {
+      for (int i = 0; i < width; i++) {
+        coordinates.add(GROUP_ID + ":" + artifactId(layer, i) + ":" + VERSION);
+      }
+    }
+    return coordinates;
+  }
+
+  /**
+   * Creates a helper which only knows this repository.
+   *
+   * @param localRepoDir
+   *          the download directory
+   * @return the helper
+   */
+  public RepositorySystemHelper newHelper(File localRepoDir) {
+    RemoteRepository repository = new RemoteRepository.Builder("fixture", "default", basedir.toURI().toString())
+        .build();
+    return new RepositorySystemHelper(localRepoDir.getPath(), Collections.singletonList(repository));
+  }
+
+  /**
+   * Raises the log level to ERROR, so that the printed dependency trees and the
+   * warnings about missing javadoc do not dominate the measurements.
+   */
+  public static void quietLogging() {
+    ch.qos.logback.classic.Logger root = (ch.qos.logback.classic.Logger) LoggerFactory
+        .getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+    root.setLevel(ch.qos.logback.classic.Level.ERROR);
+    ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.github.gemba.artifactresolver"))
+        .setLevel(ch.qos.logback.classic.Level.ERROR);
+  }
+
+  private static String artifactId(int layer, int index) {
+    return "l" + layer + "a" + index;
+  }
+
+  private void writeArtifact(String artifactId, List<String> dependencies, byte[] jar) throws IOException {
+    File dir = new File(basedir, GROUP_ID.replace('.', '/') + "/" + artifactId + "/" + VERSION);
+    String baseName = artifactId + "-" + VERSION;
+
+    StringBuilder pom = new StringBuilder();
+    pom.append("<project><modelVersion>4.0.0</modelVersion>");
+    pom.append("<groupId>").append(GROUP_ID).append("</groupId>");
+    pom.append("<artifactId>").append(artifactId).append("</artifactId>");
+    pom.append("<version>").append(VERSION).append("</version><dependencies>");
+    for (String dependency : dependencies) {
+      pom.append("<dependency><groupId>").append(GROUP_ID).append("</groupId>");
+      pom.append("<artifactId>").append(dependency).append("</artifactId>");
+      pom.append("<version>").append(VERSION).append("</version></dependency>");
+    }
+    pom.append("</dependencies></project>");
+
+    writeFile(new File(dir, baseName + ".pom"), pom.toString().getBytes("UTF-8"));
+    writeFile(new File(dir, baseName + ".jar"), jar);
+    writeFile(new File(dir, baseName + "-sources.jar"), jar);
+  }
+
+  private static void writeFile(File file, byte[] content) throws IOException {
+    FileUtils.writeByteArrayToFile(file, content);
+    FileUtils.writeStringToFile(new File(file.getPath() + ".sha1"), Checksums.sha1(file), "UTF-8");
+  }
+
+  private static byte[] newJar() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ZipOutputStream zip = new ZipOutputStream(bytes);
+    zip.putNextEntry(new ZipEntry("fixture.txt"));
+    byte[] line = "fixture content\n".getBytes("UTF-8");
+    for (int i = 0; i < 1024; i++) {
+      zip.write(line);
+    }
+    zip.closeEntry();
+    zip.close();
+    return bytes.toByteArray();
+  }
+}
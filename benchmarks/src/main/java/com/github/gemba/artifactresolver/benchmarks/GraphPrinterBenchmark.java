@@ -0,0 +1,96 @@
+package com.github.gemba.artifactresolver.benchmarks;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.DefaultDependencyNode;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.util.artifact.JavaScopes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.gemba.artifactresolver.DependencyGraph;
+import com.github.gemba.artifactresolver.TreeFormat;
+
+/**
+ * Measures the rendering of large dependency trees in each {@link TreeFormat}
+ * and their conversion from aether nodes into a {@link DependencyGraph}. The
+ * trees are built in memory, each node has <code>fanout</code> children down
+ * to <code>depth</code> levels.
+ *
+ * @author Gemba
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GraphPrinterBenchmark {
+
+  @Param({ "3", "8" })
+  public int fanout;
+
+  @Param({ "4", "6" })
+  public int depth;
+
+  @Param({ "TEXT", "DOT", "JSON" })
+  public TreeFormat format;
+
+  private DependencyNode root;
+
+  private DependencyGraph graph;
+
+  private int graphRoot;
+
+  @Setup
+  public void createTree() {
+    root = newNode("root", fanout, depth);
+    graph = new DependencyGraph();
+    graphRoot = graph.add(root, null);
+  }
+
+  @Benchmark
+  public String printTree() {
+    DependencyGraph.Visitor printer = format.newPrinter();
+    graph.accept(graphRoot, printer);
+    return printer.toString();
+  }
+
+  @Benchmark
+  public int addTree() {
+    return new DependencyGraph().add(root, null);
+  }
+
+  private static DependencyNode newNode(String artifactId, int fanout, int depth) {
+    DefaultArtifact artifact = new DefaultArtifact("bench.tree", artifactId, "jar", "1.0");
+    DefaultDependencyNode node = new DefaultDependencyNode(new Dependency(artifact, JavaScopes.COMPILE));
+    if (depth > 0) {
+      List<DependencyNode> children = new ArrayList<DependencyNode>(fanout);
+      for (int i = 0; i < fanout; i++) {
+        children.add(newNode(artifactId + "-" + i, fanout, depth - 1));
+      }
+      node.setChildren(children);
+    }
+    return node;
+  }
+}
@@ -0,0 +1,82 @@
+package com.github.gemba.artifactresolver.benchmarks;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.gemba.artifactresolver.CoordinateManifestReader;
+import com.github.gemba.artifactresolver.JsonManifestReader;
+import com.github.gemba.artifactresolver.ManifestReader;
+
+/**
+ * Measures reading the artifacts of a JSON dependency file and of a
+ * coordinate file.
+ *
+ * @author Gemba
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ManifestBenchmark {
+
+  @Param({ "100", "10000" })
+  public int artifacts;
+
+  private String json;
+  private String coordinates;
+
+  @Setup
+  public void createManifests() {
+    StringBuilder jsonBuilder = new StringBuilder("[\n");
+    StringBuilder coordinateBuilder = new StringBuilder("# generated\n");
+    for (int i = 0; i < artifacts; i++) {
+      if (i > 0) {
+        jsonBuilder.append(",\n");
+      }
+      jsonBuilder.append("{ \"groupId\": \"bench.manifest\", \"artifactId\": \"a").append(i)
+          .append("\", \"version\": \"1.0\", \"extension\": \"jar\" }");
+      coordinateBuilder.append("bench.manifest:a").append(i).append(":1.0\n");
+    }
+    json = jsonBuilder.append("\n]\n").toString();
+    coordinates = coordinateBuilder.toString();
+  }
+
+  @Benchmark
+  public void readJson(Blackhole blackhole) {
+    read(new JsonManifestReader(new StringReader(json)), blackhole);
+  }
+
+  @Benchmark
+  public void readCoordinates(Blackhole blackhole) {
+    read(new CoordinateManifestReader(new StringReader(coordinates)), blackhole);
+  }
+
+  private static void read(ManifestReader reader, Blackhole blackhole) {
+    for (DefaultArtifact artifact : reader) {
+      blackhole.consume(artifact);
+    }
+  }
+}
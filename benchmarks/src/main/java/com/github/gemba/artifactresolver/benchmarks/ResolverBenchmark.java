@@ -0,0 +1,122 @@
+package com.github.gemba.artifactresolver.benchmarks;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.util.artifact.JavaScopes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.gemba.artifactresolver.DependencyResolver;
+import com.github.gemba.artifactresolver.RepositorySystemHelper;
+
+/**
+ * Measures the resolution of the {@link FixtureRepository}. Every invocation
+ * starts with a new session, so the caches of the repository system are
+ * cold. The download directory is empty, except for the attachment
+ * benchmark, which starts with all jars and POMs downloaded.
+ *
+ * @author Gemba
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(1)
+public class ResolverBenchmark {
+
+  @Param({ "10", "50" })
+  public int width;
+
+  @Param({ "4", "8" })
+  public int depth;
+
+  private File workDir;
+  private FixtureRepository fixture;
+
+  // jars and POMs of the fixture, without attachments
+  private File resolvedRepo;
+
+  // download directory of the current invocation
+  private File localRepo;
+  private RepositorySystemHelper helper;
+
+  @Setup(Level.Trial)
+  public void createFixture() throws Exception {
+    FixtureRepository.quietLogging();
+    workDir = new File(System.getProperty("java.io.tmpdir"), "mvn-dd-bench-" + width + "x" + depth);
+    fixture = new FixtureRepository(new File(workDir, "remote"), width, depth);
+
+    resolvedRepo = new File(workDir, "resolved");
+    FileUtils.deleteDirectory(resolvedRepo);
+    new DependencyResolver(fixture.newHelper(resolvedRepo)).downloadDependencyTree(fixture.getRoot(), false, false);
+  }
+
+  @Setup(Level.Invocation)
+  public void createSession() throws IOException {
+    localRepo = new File(workDir, "local");
+    FileUtils.deleteDirectory(localRepo);
+    helper = fixture.newHelper(localRepo);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteFixture() throws IOException {
+    FileUtils.deleteDirectory(workDir);
+  }
+
+  @Benchmark
+  public DependencyNode collectDependencies() throws Exception {
+    return helper.collectDependencies(new Dependency(fixture.getRoot(), JavaScopes.COMPILE));
+  }
+
+  @Benchmark
+  public void downloadDependencyTree() throws Exception {
+    new DependencyResolver(helper).downloadDependencyTree(fixture.getRoot(), false, false);
+  }
+
+  @Benchmark
+  public void downloadAttachments(AttachmentState state) throws Exception {
+    new DependencyResolver(state.helper).downloadDependencyTree(fixture.getRoot(), true, true);
+  }
+
+  /**
+   * A download directory holding the resolved jars and POMs, so that the
+   * benchmark mostly fetches the javadoc and sources.
+   */
+  @State(Scope.Benchmark)
+  public static class AttachmentState {
+
+    private RepositorySystemHelper helper;
+
+    @Setup(Level.Invocation)
+    public void copyResolvedRepository(ResolverBenchmark benchmark) throws IOException {
+      File localRepo = new File(benchmark.workDir, "attachments");
+      FileUtils.deleteDirectory(localRepo);
+      FileUtils.copyDirectory(benchmark.resolvedRepo, localRepo);
+      helper = benchmark.fixture.newHelper(localRepo);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package com.github.gemba.artifactresolver.benchmarks;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.transport.http.HttpTransporterFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.gemba.artifactresolver.HttpTransport;
+import com.github.gemba.artifactresolver.JdkHttpTransporterFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Measures many concurrent small downloads with each {@link HttpTransport}
+ * from a local HTTP server, i.e. the fetches of POMs and jars while a large
+ * graph is resolved. The score is the time per download.
+ * <p>
+ * The HTTP server of the JDK speaks HTTP/1.1 only, so both clients open a
+ * connection per concurrent download here; the multiplexing of the JDK
+ * client needs a repository served with HTTP/2.
+ *
+ * @author Gemba
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+// without, the server delays small responses for the ACK of their headers
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class TransporterBenchmark {
+
+  private static final int DOWNLOADS = 512;
+
+  @Param({ "JDK", "APACHE" })
+  public HttpTransport transport;
+
+  @Param({ "8", "256" })
+  public int concurrency;
+
+  @Param({ "2048", "65536" })
+  public int size;
+
+  private HttpServer server;
+  private Transporter transporter;
+  private ExecutorService executor;
+
+  @Setup
+  public void startServer() throws Exception {
+    FixtureRepository.quietLogging();
+
+    final byte[] content = new byte[size];
+    new Random(42).nextBytes(content);
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 512);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, content.length);
+        OutputStream body = exchange.getResponseBody();
+        body.write(content);
+        body.close();
+      }
+    });
+    server.start();
+
+    RepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+    RemoteRepository repository = new RemoteRepository.Builder("bench", "default",
+        "http://localhost:" + server.getAddress().getPort() + "/repo/").build();
+    TransporterFactory factory = transport == HttpTransport.JDK ? new JdkHttpTransporterFactory()
+        : new HttpTransporterFactory();
+    transporter = factory.newInstance(session, repository);
+    executor = Executors.newFixedThreadPool(concurrency);
+  }
+
+  @TearDown
+  public void stopServer() {
+    executor.shutdownNow();
+    transporter.close();
+    server.stop(0);
+    ((ExecutorService) server.getExecutor()).shutdownNow();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(DOWNLOADS)
+  public int download() throws Exception {
+    List<Future<Integer>> downloads = new ArrayList<Future<Integer>>(DOWNLOADS);
+    for (int i = 0; i < DOWNLOADS; i++) {
+      final URI location = URI.create("bench/a" + i + "/1.0/a" + i + "-1.0.jar");
+      downloads.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          GetTask task = new GetTask(location);
+          transporter.get(task);
+          return task.getDataBytes().length;
+        }
+      }));
+    }
+    int bytes = 0;
+    for (Future<Integer> download : downloads) {
+      bytes += download.get();
+    }
+    return bytes;
+  }
+}
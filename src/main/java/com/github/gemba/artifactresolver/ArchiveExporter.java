@@ -0,0 +1,177 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.artifact.Artifact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies every resolved artifact into an archive in the maven layout, with
+ * its SHA-1 checksum, as soon as it is resolved. The artifacts are recorded
+ * as a listener of the repository events, which includes the POMs and parent
+ * POMs, and written by a background thread so that the resolution does not
+ * wait for the archive.
+ * <p>
+ * On close the {@link ExportManifest} is added to the archive and written
+ * next to it as <code>&lt;archive&gt;.json</code>.
+ * <p>
+ * A delta export starts from the manifest of a previous export: artifacts
+ * listed there with the same checksum are left out of the archive, but stay
+ * in the manifest.
+ *
+ * @author Gemba
+ */
+public class ArchiveExporter extends AbstractRepositoryListener implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(ArchiveExporter.class);
+
+  private final File archive;
+  private final ArchiveWriter writer;
+  private final String localRepoPath;
+
+  private final ExportManifest manifest = new ExportManifest();
+  private final ExportManifest previousExport;
+
+  // paths already queued for the archive
+  private final Set<String> paths = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "export");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+
+  // artifacts written by the export thread
+  private int exported;
+
+  /**
+   * Creates the archive.
+   *
+   * @param archive
+   *          the archive to create, see {@link ArchiveWriter#open(File)}
+   * @param localRepo
+   *          the download directory holding the resolved artifacts
+   * @param previousExport
+   *          the manifest of the previous export, <code>null</code> to export
+   *          all artifacts
+   * @throws IOException
+   *           if the archive is not writable
+   */
+  public ArchiveExporter(File archive, File localRepo, ExportManifest previousExport) throws IOException {
+    this.archive = archive;
+    this.previousExport = previousExport;
+    if (previousExport != null) {
+      manifest.addAll(previousExport);
+    }
+    this.writer = ArchiveWriter.open(archive);
+    this.localRepoPath = localRepo.getAbsolutePath() + File.separator;
+  }
+
+  /**
+   * Queues a resolved artifact for the archive.
+   */
+  @Override
+  public void artifactResolved(RepositoryEvent event) {
+    Artifact artifact = event.getArtifact();
+    if (event.getException() != null || artifact.getFile() == null) {
+      return;
+    }
+
+    final File file = artifact.getFile();
+    String absolutePath = file.getAbsolutePath();
+    if (!absolutePath.startsWith(localRepoPath)) {
+      log.debug("Not exporting {}, it is not in the download directory", artifact);
+      return;
+    }
+    final String path = absolutePath.substring(localRepoPath.length()).replace(File.separatorChar, '/');
+    if (!paths.add(path)) {
+      return;
+    }
+
+    final String coordinates = artifact.toString();
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        if (failure.get() != null) {
+          return;
+        }
+        try {
+          export(coordinates, path, file);
+        } catch (IOException ioe) {
+          log.error("Cannot export {}: {}", coordinates, ioe.getMessage());
+          failure.compareAndSet(null, ioe);
+        }
+      }
+    });
+  }
+
+  /**
+   * Waits for the queued artifacts, then adds the manifest and closes the
+   * archive.
+   *
+   * @throws IOException
+   *           if an artifact could not be exported
+   */
+  @Override
+  public void close() throws IOException {
+    executor.shutdown();
+    try {
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      failure.compareAndSet(null, new IOException("Interrupted while exporting"));
+    }
+
+    try {
+      byte[] manifestBytes = manifest.toBytes();
+      writer.putBytes(ExportManifest.FILE_NAME, manifestBytes);
+      FileUtils.writeByteArrayToFile(new File(archive.getPath() + ".json"), manifestBytes);
+    } finally {
+      writer.close();
+    }
+
+    IOException ioe = failure.get();
+    if (ioe != null) {
+      throw ioe;
+    }
+    log.info("Exported {} artifacts to \"{}\".", exported, archive);
+  }
+
+  private void export(String coordinates, String path, File file) throws IOException {
+    String sha1 = Checksums.sha1(file);
+    if (previousExport != null && previousExport.contains(coordinates, sha1)) {
+      log.debug("Not exporting {}, unchanged since the previous export", coordinates);
+      return;
+    }
+    exported++;
+    writer.putFile(path, file);
+    writer.putBytes(path + ".sha1", sha1.getBytes("US-ASCII"));
+    manifest.add(coordinates, path, sha1, file.length());
+  }
+}
@@ -0,0 +1,67 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes files into an archive, in the order they are added. The format
+ * follows the name of the archive: <code>.zip</code>, <code>.tar</code>,
+ * <code>.tar.gz</code> or <code>.tgz</code>.
+ *
+ * @author Gemba
+ */
+public abstract class ArchiveWriter implements Closeable {
+
+  /**
+   * Creates the archive.
+   *
+   * @param file
+   *          the archive to create
+   * @return the writer of the archive
+   * @throws IOException
+   *           if the format is unknown or the file not writable
+   */
+  public static ArchiveWriter open(File file) throws IOException {
+    String name = file.getName().toLowerCase();
+    if (name.endsWith(".zip")) {
+      return new ZipArchiveWriter(file);
+    } else if (name.endsWith(".tar")) {
+      return new TarArchiveWriter(file, false);
+    } else if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+      return new TarArchiveWriter(file, true);
+    }
+    throw new IOException("Unknown archive format, use .zip, .tar, .tar.gz or .tgz: " + file);
+  }
+
+  /**
+   * Adds the content of a file.
+   *
+   * @param path
+   *          the path in the archive, separated by '/'
+   * @param file
+   *          the file to add
+   * @throws IOException
+   *           if the file is not readable or the archive not writable
+   */
+  public abstract void putFile(String path, File file) throws IOException;
+
+  /**
+   * Adds an entry with the given content.
+   *
+   * @param path
+   *          the path in the archive, separated by '/'
+   * @param content
+   *          the content of the entry
+   * @throws IOException
+   *           if the archive is not writable
+   */
+  public abstract void putBytes(String path, byte[] content) throws IOException;
+}
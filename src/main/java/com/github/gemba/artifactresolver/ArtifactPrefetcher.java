@@ -0,0 +1,199 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.graph.DependencyVisitor;
+import org.eclipse.aether.impl.ArtifactResolver;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.util.graph.visitor.TreeDependencyVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads artifacts in the background while their dependency graph is still
+ * being collected. An artifact is queued as soon as its descriptor is read
+ * (see {@link PrefetchingArtifactDescriptorReader}), the resolution of the
+ * graph waits for the queued artifacts with {@link #await(DependencyNode)}.
+ * <p>
+ * Artifacts later dropped by conflict resolution may be downloaded as well.
+ * Failed downloads are ignored here, the resolution of the graph reports
+ * them. Like the resolution, the prefetcher skips artifacts known to be
+ * missing and released artifacts of the previous export.
+ *
+ * @author Gemba
+ */
+public class ArtifactPrefetcher {
+
+  private static final Logger log = LoggerFactory.getLogger(ArtifactPrefetcher.class);
+
+  private final ExecutorService executor;
+
+  // artifact coordinates -> download
+  private final ConcurrentMap<String, Future<?>> downloads = new ConcurrentHashMap<String, Future<?>>();
+
+  private volatile NotFoundCache notFoundCache;
+  private volatile ExportManifest previousExport;
+
+  /**
+   * @param threads
+   *          number of concurrent background downloads
+   */
+  public ArtifactPrefetcher(int threads) {
+    executor = Executors.newFixedThreadPool(threads, new PrefetchThreadFactory());
+  }
+
+  /**
+   * Skips the artifacts which were not found by a previous run.
+   *
+   * @param notFoundCache
+   *          the cache of the missing artifacts, <code>null</code> to download
+   *          all artifacts
+   */
+  public void setNotFoundCache(NotFoundCache notFoundCache) {
+    this.notFoundCache = notFoundCache;
+  }
+
+  /**
+   * Skips the released artifacts of a previous export.
+   *
+   * @param previousExport
+   *          the manifest of the previous export, <code>null</code> to
+   *          download all artifacts
+   */
+  public void setPreviousExport(ExportManifest previousExport) {
+    this.previousExport = previousExport;
+  }
+
+  /**
+   * Queues the download of an artifact unless it is already queued or
+   * skipped.
+   *
+   * @param session
+   *          the session of the collection
+   * @param artifactResolver
+   *          the resolver doing the download
+   * @param artifact
+   *          the artifact to download
+   * @param repositories
+   *          the repositories to download from
+   */
+  public void prefetch(final RepositorySystemSession session, final ArtifactResolver artifactResolver,
+      final Artifact artifact, List<RemoteRepository> repositories) {
+    if (isSkipped(artifact)) {
+      return;
+    }
+
+    final ArtifactRequest request = new ArtifactRequest(artifact, repositories, null);
+    // keeps the MDC, e.g. the daemon client of the collection
+    FutureTask<Object> download = new FutureTask<Object>(new MdcRunnable(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          artifactResolver.resolveArtifact(session, request);
+        } catch (ArtifactResolutionException are) {
+          log.debug("Prefetching {} failed: {}", artifact, are.getMessage());
+        }
+      }
+    }), null);
+
+    if (downloads.putIfAbsent(artifact.toString(), download) == null) {
+      executor.execute(download);
+    }
+  }
+
+  private boolean isSkipped(Artifact artifact) {
+    NotFoundCache currentNotFoundCache = notFoundCache;
+    if (currentNotFoundCache != null && currentNotFoundCache.isMissing(artifact)) {
+      log.debug("Not prefetching {}, not found by a previous run", artifact);
+      return true;
+    }
+    ExportManifest currentPreviousExport = previousExport;
+    if (currentPreviousExport != null && currentPreviousExport.contains(artifact)) {
+      log.debug("Not prefetching {}, exported before", artifact);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Waits for the queued downloads of the artifacts in a dependency graph.
+   *
+   * @param node
+   *          the root of the graph
+   */
+  public void await(DependencyNode node) {
+    node.accept(new TreeDependencyVisitor(new DependencyVisitor() {
+      @Override
+      public boolean visitEnter(DependencyNode child) {
+        return child.getArtifact() == null || await(child.getArtifact());
+      }
+
+      @Override
+      public boolean visitLeave(DependencyNode child) {
+        return true;
+      }
+    }));
+  }
+
+  /**
+   * @return <code>false</code> if interrupted while waiting
+   */
+  private boolean await(Artifact artifact) {
+    Future<?> download = downloads.get(artifact.toString());
+    if (download == null) {
+      return true;
+    }
+    try {
+      download.get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException ee) {
+      log.debug("Prefetching {} failed: {}", artifact, ee.getMessage());
+    }
+    return true;
+  }
+
+  /**
+   * Stops the background downloads. Queued downloads are dropped.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Names the daemon threads of background downloads.
+   */
+  private static class PrefetchThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "prefetch-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
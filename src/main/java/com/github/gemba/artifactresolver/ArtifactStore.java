@@ -0,0 +1,187 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content addressed store of release artifacts, shared by several download
+ * directories. Each file is kept once, named by its SHA-1, and hard linked
+ * into the maven layout of every download directory using it. Files on
+ * another file system than the store are copied instead.
+ * <p>
+ * The store is a directory with two trees:
+ * <ul>
+ * <li><code>objects/</code> holds the files, e.g.
+ * <code>objects/d4/0d68ba1f...</code>
+ * <li><code>paths/</code> maps the maven path of an artifact to the SHA-1 of
+ * its file, e.g. <code>paths/org/slf4j/slf4j-api/1.7.18/slf4j-api-1.7.18.jar</code>
+ * </ul>
+ * Files are created under a temporary name and renamed, so that concurrent
+ * runs may share a store. Artifacts are never changed in place, which makes
+ * the hard links safe.
+ *
+ * @author Gemba
+ */
+public class ArtifactStore {
+
+  private static final Logger log = LoggerFactory.getLogger(ArtifactStore.class);
+
+  private final File objects;
+  private final File paths;
+
+  private final AtomicInteger linked = new AtomicInteger();
+  private final AtomicInteger stored = new AtomicInteger();
+
+  /**
+   * @param directory
+   *          the directory of the store, created if missing
+   */
+  public ArtifactStore(File directory) {
+    objects = new File(directory, "objects");
+    paths = new File(directory, "paths");
+  }
+
+  /**
+   * @param path
+   *          the maven path of the artifact
+   * @return <code>true</code> if the store holds a file for this path
+   */
+  public boolean contains(String path) {
+    return new File(paths, path).isFile();
+  }
+
+  /**
+   * Links the file stored for an artifact into a download directory.
+   *
+   * @param path
+   *          the maven path of the artifact
+   * @param target
+   *          the file to create
+   * @return <code>true</code> if the store held the artifact
+   */
+  public boolean link(String path, File target) {
+    File entry = new File(paths, path);
+    if (!entry.isFile()) {
+      return false;
+    }
+    try {
+      String sha1 = new String(Files.readAllBytes(entry.toPath()), StandardCharsets.US_ASCII).trim();
+      File object = getObject(sha1);
+      if (!object.isFile()) {
+        return false;
+      }
+      target.getParentFile().mkdirs();
+      replace(target, object);
+      linked.incrementAndGet();
+      return true;
+    } catch (IOException ioe) {
+      log.warn("Cannot link {} from the store: {}", path, ioe.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Adds the file of an artifact to the store. The file is replaced by a link
+   * if the store already held the same content for another path.
+   *
+   * @param path
+   *          the maven path of the artifact
+   * @param file
+   *          the downloaded file
+   */
+  public void put(String path, File file) {
+    try {
+      String sha1 = Checksums.sha1(file);
+      File object = getObject(sha1);
+      if (object.isFile()) {
+        if (!Files.isSameFile(object.toPath(), file.toPath())) {
+          replace(file, object);
+        }
+      } else {
+        object.getParentFile().mkdirs();
+        Path temp = newTempPath(object);
+        try {
+          linkOrCopy(temp, file.toPath());
+          Files.move(temp, object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException faee) {
+          // stored by a concurrent run
+          Files.deleteIfExists(temp);
+          replace(file, object);
+        }
+      }
+
+      File entry = new File(paths, path);
+      entry.getParentFile().mkdirs();
+      Path temp = newTempPath(entry);
+      Files.write(temp, sha1.getBytes(StandardCharsets.US_ASCII));
+      Files.move(temp, entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      stored.incrementAndGet();
+    } catch (IOException ioe) {
+      log.warn("Cannot add {} to the store: {}", path, ioe.getMessage());
+    }
+  }
+
+  /**
+   * @return the number of artifacts linked from the store
+   */
+  public int getLinked() {
+    return linked.get();
+  }
+
+  /**
+   * @return the number of artifacts added to the store
+   */
+  public int getStored() {
+    return stored.get();
+  }
+
+  private File getObject(String sha1) throws IOException {
+    if (sha1.length() != 40) {
+      throw new IOException("Invalid SHA-1 '" + sha1 + "'");
+    }
+    return new File(new File(objects, sha1.substring(0, 2)), sha1.substring(2));
+  }
+
+  /**
+   * Replaces a file by a link to a stored object.
+   */
+  private static void replace(File file, File object) throws IOException {
+    Path temp = newTempPath(file);
+    linkOrCopy(temp, object.toPath());
+    Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void linkOrCopy(Path link, Path existing) throws IOException {
+    try {
+      Files.createLink(link, existing);
+    } catch (UnsupportedOperationException uoe) {
+      Files.copy(existing, link);
+    } catch (FileAlreadyExistsException faee) {
+      throw faee;
+    } catch (IOException ioe) {
+      // e.g. another file system
+      Files.copy(existing, link);
+    }
+  }
+
+  private static Path newTempPath(File file) {
+    return new File(file.getParentFile(), file.getName() + "." + Thread.currentThread().getId() + "."
+        + System.nanoTime() + ".tmp").toPath();
+  }
+}
@@ -0,0 +1,187 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.repository.internal.DefaultVersionRangeResolver;
+import org.eclipse.aether.RepositoryCache;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.impl.UpdatePolicyAnalyzer;
+import org.eclipse.aether.impl.VersionRangeResolver;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.eclipse.aether.resolution.VersionRangeRequest;
+import org.eclipse.aether.resolution.VersionRangeResolutionException;
+import org.eclipse.aether.resolution.VersionRangeResult;
+import org.eclipse.aether.spi.locator.Service;
+import org.eclipse.aether.spi.locator.ServiceLocator;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.version.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Version range resolver remembering its results in the cache of the
+ * session. A collection only shares the ranges it resolves itself, so
+ * without this every dependency graph of a run reads the metadata of a
+ * shared range again, and checks every repository whether it is up to date.
+ * <p>
+ * A remembered result expires like the metadata it was read from: by the
+ * update policy of the session, or else the most frequent one of the
+ * repositories asked. A long-lived session, like the one of a daemon, thus
+ * sees versions published since. Results are not remembered if a repository
+ * failed, only missing metadata is expected.
+ *
+ * @author Gemba
+ */
+public class CachingVersionRangeResolver implements VersionRangeResolver, Service {
+
+  private static final Logger log = LoggerFactory.getLogger(CachingVersionRangeResolver.class);
+
+  private DefaultVersionRangeResolver delegate;
+
+  private UpdatePolicyAnalyzer updatePolicyAnalyzer;
+
+  @Override
+  public void initService(ServiceLocator locator) {
+    delegate = new DefaultVersionRangeResolver();
+    delegate.initService(locator);
+    updatePolicyAnalyzer = locator.getService(UpdatePolicyAnalyzer.class);
+  }
+
+  @Override
+  public VersionRangeResult resolveVersionRange(RepositorySystemSession session, VersionRangeRequest request)
+      throws VersionRangeResolutionException {
+    RepositoryCache cache = session.getCache();
+    if (cache == null || !isRange(request.getArtifact().getVersion())) {
+      return delegate.resolveVersionRange(session, request);
+    }
+
+    Key key = new Key(request);
+    CachedRange cached = (CachedRange) cache.get(session, key);
+    if (cached != null) {
+      if (!updatePolicyAnalyzer.isUpdatedRequired(session, cached.timestamp, getUpdatePolicy(session, request))) {
+        log.debug("Reusing versions of {}", request.getArtifact());
+        return copy(cached.result, request);
+      }
+      log.debug("Versions of {} are outdated", request.getArtifact());
+    }
+
+    long timestamp = System.currentTimeMillis();
+    VersionRangeResult result = delegate.resolveVersionRange(session, request);
+    if (isComplete(result)) {
+      cache.put(session, key, new CachedRange(result, timestamp));
+    }
+    return result;
+  }
+
+  /**
+   * @return the update policy of the session or the most frequent one of the
+   *         repositories
+   */
+  private String getUpdatePolicy(RepositorySystemSession session, VersionRangeRequest request) {
+    if (session.getUpdatePolicy() != null) {
+      return session.getUpdatePolicy();
+    }
+    String policy = RepositoryPolicy.UPDATE_POLICY_NEVER;
+    for (RemoteRepository repository : request.getRepositories()) {
+      policy = updatePolicyAnalyzer.getEffectiveUpdatePolicy(session, policy,
+          repository.getPolicy(false).getUpdatePolicy());
+      policy = updatePolicyAnalyzer.getEffectiveUpdatePolicy(session, policy,
+          repository.getPolicy(true).getUpdatePolicy());
+    }
+    return policy;
+  }
+
+  private static boolean isRange(String version) {
+    return version.startsWith("[") || version.startsWith("(");
+  }
+
+  private static boolean isComplete(VersionRangeResult result) {
+    for (Exception exception : result.getExceptions()) {
+      if (!(exception instanceof MetadataNotFoundException)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return a result of the request with the versions of a cached result
+   */
+  private static VersionRangeResult copy(VersionRangeResult cached, VersionRangeRequest request) {
+    VersionRangeResult result = new VersionRangeResult(request);
+    result.setVersionConstraint(cached.getVersionConstraint());
+    result.setVersions(new ArrayList<Version>(cached.getVersions()));
+    for (Version version : cached.getVersions()) {
+      result.setRepository(version, cached.getRepository(version));
+    }
+    for (Exception exception : cached.getExceptions()) {
+      result.addException(exception);
+    }
+    return result;
+  }
+
+  /**
+   * A remembered result and the time it was resolved.
+   */
+  private static final class CachedRange {
+
+    private final VersionRangeResult result;
+    private final long timestamp;
+
+    CachedRange(VersionRangeResult result, long timestamp) {
+      this.result = result;
+      this.timestamp = timestamp;
+    }
+  }
+
+  /**
+   * Identifies a range by its coordinates, the repositories asked and the
+   * request context.
+   */
+  private static final class Key {
+
+    private final String coordinates;
+    private final List<String> repositories;
+    private final String context;
+    private final int hashCode;
+
+    Key(VersionRangeRequest request) {
+      Artifact artifact = request.getArtifact();
+      coordinates = artifact.getGroupId() + ':' + artifact.getArtifactId() + ':' + artifact.getVersion();
+      repositories = new ArrayList<String>(request.getRepositories().size());
+      for (RemoteRepository repository : request.getRepositories()) {
+        repositories.add(repository.getId() + ' ' + repository.getUrl());
+      }
+      context = request.getRequestContext();
+      hashCode = (coordinates.hashCode() * 31 + repositories.hashCode()) * 31 + context.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return coordinates.equals(other.coordinates) && repositories.equals(other.repositories)
+          && context.equals(other.context);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
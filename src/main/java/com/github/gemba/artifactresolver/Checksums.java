@@ -0,0 +1,89 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Computes the SHA-1 checksums used by maven repositories.
+ *
+ * @author Gemba
+ */
+public final class Checksums {
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private Checksums() {
+  }
+
+  /**
+   * @param file
+   *          the file to read
+   * @return the hex encoded SHA-1 of the file content
+   * @throws IOException
+   *           if the file is not readable
+   */
+  public static String sha1(File file) throws IOException {
+    MessageDigest digest = newSha1();
+    byte[] buffer = new byte[64 * 1024];
+
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+        digest.update(buffer, 0, read);
+      }
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * @param text
+   *          the text to digest
+   * @return the hex encoded SHA-1 of the UTF-8 encoded text
+   */
+  public static String sha1(String text) {
+    try {
+      return toHex(newSha1().digest(text.getBytes("UTF-8")));
+    } catch (UnsupportedEncodingException uee) {
+      throw new IllegalStateException(uee);
+    }
+  }
+
+  /**
+   * @param bytes
+   *          the bytes to encode
+   * @return the lower case hex encoding
+   */
+  public static String toHex(byte[] bytes) {
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+      hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+    }
+    return new String(hex);
+  }
+
+  private static MessageDigest newSha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException nsae) {
+      throw new IllegalStateException(nsae);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+/**
+ * Reads artifacts given as one coordinate per line in the format
+ * &lt;groupId&gt;:&lt;artifactId&gt;[:&lt;extension&gt;[:&lt;classifier&gt;]]:&lt;version&gt;.
+ * Empty lines and lines starting with '#' are skipped.
+ *
+ * @author Gemba
+ */
+public class CoordinateManifestReader extends ManifestReader {
+
+  private final BufferedReader lines;
+  private int lineNumber;
+
+  /**
+   * @param reader
+   *          the reader of the coordinates
+   */
+  public CoordinateManifestReader(Reader reader) {
+    super(reader);
+    lines = new BufferedReader(reader);
+  }
+
+  @Override
+  protected DefaultArtifact readNext() throws IOException {
+    for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+      lineNumber++;
+      line = line.trim();
+      if (line.length() == 0 || line.startsWith("#")) {
+        continue;
+      }
+      try {
+        return new DefaultArtifact(line);
+      } catch (IllegalArgumentException iae) {
+        throw new IOException("Invalid coordinate in line " + lineNumber + ": " + line, iae);
+      }
+    }
+    return null;
+  }
+}
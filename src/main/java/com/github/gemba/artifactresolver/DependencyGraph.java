@@ -0,0 +1,422 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyFilter;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.graph.DependencyVisitor;
+import org.eclipse.aether.util.graph.visitor.FilteringDependencyVisitor;
+import org.eclipse.aether.util.graph.visitor.TreeDependencyVisitor;
+
+/**
+ * Compact store of many dependency trees, kept for printing and for the lock
+ * file after the graphs of aether are dropped. A node is an <code>int</code>
+ * indexing primitive arrays: the coordinates, the scope and the children of
+ * each node. The coordinates and scopes are stored once, and so are equal
+ * subtrees: the trees of thousands of roots share the nodes of their common
+ * dependencies.
+ * <p>
+ * Nodes are immutable once added, a node is added after its children. All
+ * methods are thread-safe.
+ *
+ * @author Gemba
+ */
+public class DependencyGraph {
+
+  /**
+   * Visits the nodes of a tree in depth-first order.
+   */
+  public interface Visitor {
+
+    /**
+     * @param graph
+     *          the graph of the node
+     * @param node
+     *          the node entered
+     * @return <code>true</code> to visit the children of the node
+     */
+    boolean visitEnter(DependencyGraph graph, int node);
+
+    /**
+     * @param graph
+     *          the graph of the node
+     * @param node
+     *          the node left
+     * @return <code>true</code> to visit the siblings of the node
+     */
+    boolean visitLeave(DependencyGraph graph, int node);
+  }
+
+  // coordinates -> index in coordinates
+  private final Map<String, Integer> coordinateIndex = new HashMap<String, Integer>();
+  private final List<String> coordinates = new ArrayList<String>();
+
+  private final List<String> scopes = new ArrayList<String>();
+
+  // per node: index of the coordinates
+  private int[] nodeCoordinates = new int[256];
+
+  // per node: index of the scope + 1 shifted left by one, or 0 without
+  // dependency; the lowest bit marks optional dependencies
+  private byte[] nodeFlags = new byte[256];
+
+  // per node: the first child in edges; the children of node n end where
+  // those of node n + 1 start
+  private int[] childStart = new int[257];
+
+  private int[] edges = new int[1024];
+
+  private int nodeCount;
+  private int edgeCount;
+
+  // open addressing table of the nodes by content, entries are node + 1
+  private int[] table = new int[512];
+
+  /**
+   * Adds the tree view of an aether graph. A node reached twice, e.g. by a
+   * cycle, is only added below its first parent.
+   *
+   * @param node
+   *          the root of the graph
+   * @param filter
+   *          the filter of the nodes, the children of a rejected node are
+   *          added to its parent; <code>null</code> to add all nodes
+   * @return the root node
+   */
+  public int add(DependencyNode node, DependencyFilter filter) {
+    Builder builder = new Builder();
+    DependencyVisitor visitor = builder;
+    if (filter != null) {
+      visitor = new FilteringDependencyVisitor(visitor, filter);
+    }
+    node.accept(new TreeDependencyVisitor(visitor));
+    if (builder.root < 0) {
+      throw new IllegalArgumentException("No node of " + node + " is accepted by the filter");
+    }
+    return builder.root;
+  }
+
+  /**
+   * Adds a node. An equal node is returned if the graph already contains one.
+   *
+   * @param coords
+   *          the coordinates of the artifact
+   * @param scope
+   *          the scope of the dependency, <code>null</code> for a root without
+   *          dependency
+   * @param optional
+   *          <code>true</code> for an optional dependency
+   * @param children
+   *          the child nodes of this graph
+   * @param count
+   *          the number of children
+   * @return the node
+   */
+  public synchronized int add(String coords, String scope, boolean optional, int[] children, int count) {
+    int coordinate = internCoordinates(coords);
+    byte flags = scope == null ? 0 : (byte) ((internScope(scope) + 1) << 1 | (optional ? 1 : 0));
+    for (int i = 0; i < count; i++) {
+      if (children[i] < 0 || children[i] >= nodeCount) {
+        throw new IllegalArgumentException("Unknown child node " + children[i]);
+      }
+    }
+
+    int mask = table.length - 1;
+    int slot = hash(coordinate, flags, children, 0, count) & mask;
+    while (table[slot] != 0) {
+      int node = table[slot] - 1;
+      if (equals(node, coordinate, flags, children, count)) {
+        return node;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    int node = nodeCount++;
+    if (node == nodeCoordinates.length) {
+      nodeCoordinates = Arrays.copyOf(nodeCoordinates, 2 * node);
+      nodeFlags = Arrays.copyOf(nodeFlags, 2 * node);
+      childStart = Arrays.copyOf(childStart, 2 * node + 1);
+    }
+    if (edgeCount + count > edges.length) {
+      edges = Arrays.copyOf(edges, Math.max(2 * edges.length, edgeCount + count));
+    }
+    nodeCoordinates[node] = coordinate;
+    nodeFlags[node] = flags;
+    System.arraycopy(children, 0, edges, edgeCount, count);
+    edgeCount += count;
+    childStart[node + 1] = edgeCount;
+
+    table[slot] = node + 1;
+    if (2 * nodeCount > table.length) {
+      rehash();
+    }
+    return node;
+  }
+
+  /**
+   * Copies a tree of another graph into this graph.
+   *
+   * @param graph
+   *          the graph of the tree
+   * @param node
+   *          the root of the tree
+   * @return the root of the copy
+   */
+  public int add(DependencyGraph graph, int node) {
+    if (graph == this) {
+      return node;
+    }
+    int[] copies = new int[graph.size()];
+    Arrays.fill(copies, -1);
+    return copy(graph, node, copies);
+  }
+
+  /**
+   * Copies a shared subtree only once.
+   */
+  private int copy(DependencyGraph graph, int node, int[] copies) {
+    if (copies[node] < 0) {
+      int count = graph.getChildCount(node);
+      int[] children = new int[count];
+      for (int i = 0; i < count; i++) {
+        children[i] = copy(graph, graph.getChild(node, i), copies);
+      }
+      copies[node] = add(graph.getCoordinates(node), graph.getScope(node), graph.isOptional(node), children, count);
+    }
+    return copies[node];
+  }
+
+  /**
+   * Visits a tree of this graph.
+   *
+   * @param node
+   *          the root of the tree
+   * @param visitor
+   *          the visitor
+   * @return <code>false</code> if the visitor stopped the visit
+   */
+  public boolean accept(int node, Visitor visitor) {
+    if (visitor.visitEnter(this, node)) {
+      int count = getChildCount(node);
+      for (int i = 0; i < count; i++) {
+        if (!accept(getChild(node, i), visitor)) {
+          break;
+        }
+      }
+    }
+    return visitor.visitLeave(this, node);
+  }
+
+  /**
+   * @return the number of nodes
+   */
+  public synchronized int size() {
+    return nodeCount;
+  }
+
+  /**
+   * @param node
+   *          a node of this graph
+   * @return the coordinates of the artifact of the node
+   */
+  public synchronized String getCoordinates(int node) {
+    return coordinates.get(nodeCoordinates[node]);
+  }
+
+  /**
+   * @param node
+   *          a node of this graph
+   * @return a new artifact of the node
+   */
+  public Artifact getArtifact(int node) {
+    return new DefaultArtifact(getCoordinates(node));
+  }
+
+  /**
+   * @param node
+   *          a node of this graph
+   * @return the scope of the dependency or <code>null</code> for a root
+   *         without dependency
+   */
+  public synchronized String getScope(int node) {
+    int scope = (nodeFlags[node] >> 1) - 1;
+    return scope < 0 ? null : scopes.get(scope);
+  }
+
+  /**
+   * @param node
+   *          a node of this graph
+   * @return <code>true</code> for an optional dependency
+   */
+  public synchronized boolean isOptional(int node) {
+    return (nodeFlags[node] & 1) != 0;
+  }
+
+  /**
+   * @param node
+   *          a node of this graph
+   * @return the number of children of the node
+   */
+  public synchronized int getChildCount(int node) {
+    return childStart[node + 1] - childStart[node];
+  }
+
+  /**
+   * @param node
+   *          a node of this graph
+   * @param index
+   *          the index of the child
+   * @return the child node
+   */
+  public synchronized int getChild(int node, int index) {
+    return edges[childStart[node] + index];
+  }
+
+  /**
+   * @param node
+   *          a node of this graph
+   * @return the node as rendered by aether, e.g.
+   *         <code>org.slf4j:slf4j-api:jar:1.7.18 (compile)</code>
+   */
+  public String toString(int node) {
+    String coords = getCoordinates(node);
+    String scope = getScope(node);
+    if (scope == null) {
+      return coords;
+    }
+    return coords + " (" + scope + (isOptional(node) ? "?" : "") + ")";
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "DependencyGraph [" + nodeCount + " nodes, " + edgeCount + " edges, " + coordinates.size()
+        + " artifacts]";
+  }
+
+  private int internCoordinates(String coords) {
+    Integer index = coordinateIndex.get(coords);
+    if (index == null) {
+      index = Integer.valueOf(coordinates.size());
+      coordinates.add(coords);
+      coordinateIndex.put(coords, index);
+    }
+    return index.intValue();
+  }
+
+  private int internScope(String scope) {
+    int index = scopes.indexOf(scope);
+    if (index < 0) {
+      if (scopes.size() >= 63) {
+        throw new IllegalStateException("Too many scopes: " + scopes);
+      }
+      index = scopes.size();
+      scopes.add(scope);
+    }
+    return index;
+  }
+
+  private boolean equals(int node, int coordinate, byte flags, int[] children, int count) {
+    if (nodeCoordinates[node] != coordinate || nodeFlags[node] != flags) {
+      return false;
+    }
+    int start = childStart[node];
+    if (childStart[node + 1] - start != count) {
+      return false;
+    }
+    for (int i = 0; i < count; i++) {
+      if (edges[start + i] != children[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hash(int coordinate, byte flags, int[] children, int offset, int count) {
+    int hash = coordinate * 31 + flags;
+    for (int i = offset; i < offset + count; i++) {
+      hash = hash * 31 + children[i];
+    }
+    // spreads the low bits used as slot
+    return hash ^ (hash >>> 16);
+  }
+
+  private void rehash() {
+    int[] newTable = new int[2 * table.length];
+    int mask = newTable.length - 1;
+    for (int node = 0; node < nodeCount; node++) {
+      int start = childStart[node];
+      int count = childStart[node + 1] - start;
+      int slot = hash(nodeCoordinates[node], nodeFlags[node], edges, start, count) & mask;
+      while (newTable[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      newTable[slot] = node + 1;
+    }
+    table = newTable;
+  }
+
+  /**
+   * Adds the visited nodes of an aether graph, each after its children.
+   */
+  private class Builder implements DependencyVisitor {
+
+    // children of the entered nodes, one entry per level
+    private final List<int[]> children = new ArrayList<int[]>();
+    private int[] childCounts = new int[16];
+
+    // level of the next visited node
+    private int depth;
+
+    private int root = -1;
+
+    @Override
+    public boolean visitEnter(DependencyNode node) {
+      if (depth == children.size()) {
+        children.add(new int[8]);
+      }
+      if (depth == childCounts.length) {
+        childCounts = Arrays.copyOf(childCounts, 2 * depth);
+      }
+      childCounts[depth] = 0;
+      depth++;
+      return true;
+    }
+
+    @Override
+    public boolean visitLeave(DependencyNode node) {
+      depth--;
+
+      Dependency dependency = node.getDependency();
+      int added = add(String.valueOf(node.getArtifact()), dependency == null ? null : dependency.getScope(),
+          dependency != null && dependency.isOptional(), children.get(depth), childCounts[depth]);
+
+      if (depth == 0) {
+        root = added;
+      } else {
+        int[] siblings = children.get(depth - 1);
+        int count = childCounts[depth - 1];
+        if (count == siblings.length) {
+          siblings = Arrays.copyOf(siblings, 2 * count);
+          children.set(depth - 1, siblings);
+        }
+        siblings[count] = added;
+        childCounts[depth - 1] = count + 1;
+      }
+      return true;
+    }
+  }
+}
@@ -7,89 +7,100 @@ package com.github.gemba.artifactresolver;
  * which accompanies this distribution (see COPYING), and is available at
  *   http://www.eclipse.org/legal/epl-v10.html
  *******************************************************************************/
-import java.util.HashMap;
-import java.util.Stack;
-
-import org.eclipse.aether.graph.DependencyNode;
-import org.eclipse.aether.graph.DependencyVisitor;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.Arrays;
 
 /**
- * Writes the dependencies of an artifact as tree to a logger.
- * 
+ * Renders the dependencies of an artifact as tree. The tree is collected in a
+ * buffer so that it can be written as a whole, which keeps the trees of
+ * concurrently resolved artifacts from interleaving.
+ * <p>
+ * The indent is kept in a single buffer which is changed in place, the
+ * visits per level are counted in an array.
+ *
  * @author Gemba
  */
-public class DependencyGraphPrinter implements DependencyVisitor {
+public class DependencyGraphPrinter implements DependencyGraph.Visitor {
 
-  private static final Logger log = LoggerFactory.getLogger(DependencyGraphPrinter.class);
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
   private static final String DEFAULT_INDENT = "|   ";
 
   private static final String DEFAULT_BRANCH = "+---";
   private static final String DEFAULT_TERMINAL = "\\---";
 
-  private String indent = "";
+  private final StringBuilder indent = new StringBuilder();
 
-  // stack for visited nodes
-  private Stack<DependencyNode> nodes;
+  // number of children of the visited nodes, one entry per level
+  private int[] childCounts = new int[16];
 
-  // map to count visits per indent-level
-  private HashMap<Integer, Integer> dependencyCounter;
+  // visits per level
+  private int[] dependencyCounter = new int[16];
 
-  /**
-   * Default constructor.
-   */
-  public DependencyGraphPrinter() {
-    nodes = new Stack<DependencyNode>();
-    dependencyCounter = new HashMap<Integer, Integer>();
-  }
+  // level of the next visited node
+  private int depth;
 
-  @Override
-  public boolean visitEnter(DependencyNode node) {
-    int children = node.getChildren().size();
+  // rendered tree
+  private final StringBuilder tree = new StringBuilder(1024);
 
-    int parentChildren = 0;
-    if (nodes.size() > 0) {
-      parentChildren = nodes.peek().getChildren().size();
-    }
-    nodes.push(node);
+  @Override
+  public boolean visitEnter(DependencyGraph graph, int node) {
+    int children = graph.getChildCount(node);
 
-    Integer count = dependencyCounter.get(indent.length());
-    if (count == null) {
-      count = 1;
-    } else {
-      count++;
+    int parentChildren = depth > 0 ? childCounts[depth - 1] : 0;
+    if (depth + 1 >= childCounts.length) {
+      childCounts = Arrays.copyOf(childCounts, 2 * childCounts.length);
+      dependencyCounter = Arrays.copyOf(dependencyCounter, 2 * dependencyCounter.length);
     }
-    dependencyCounter.put(indent.length(), count);
+    childCounts[depth] = children;
+    int count = ++dependencyCounter[depth];
 
-    String in;
-    if (count == parentChildren) {
-      in = indent.replace(DEFAULT_BRANCH, DEFAULT_TERMINAL);
-    } else {
-      in = indent.replace(DEFAULT_TERMINAL, DEFAULT_BRANCH);
+    if (tree.length() > 0) {
+      tree.append(LINE_SEPARATOR);
     }
+    tree.append("  ");
+    appendIndent(count == parentChildren);
+    tree.append(graph.toString(node));
 
-    log.info("  {}{}", in, node);
-
-    if (indent.length() == 0) {
-      indent = DEFAULT_BRANCH;
+    if (depth == 0) {
+      indent.append(DEFAULT_BRANCH);
     } else {
       if (children == 1 && children == parentChildren) {
         // remove heading "|"
-        indent = DEFAULT_INDENT + " " + indent.substring(1);
-      } else {
-        indent = DEFAULT_INDENT + indent;
+        indent.setCharAt(0, ' ');
       }
+      indent.insert(0, DEFAULT_INDENT);
     }
+    depth++;
     return true;
   }
 
   @Override
-  public boolean visitLeave(DependencyNode node) {
-    dependencyCounter.remove(indent.length());
-    nodes.pop();
-    indent = indent.substring(DEFAULT_INDENT.length());
+  public boolean visitLeave(DependencyGraph graph, int node) {
+    dependencyCounter[depth] = 0;
+    depth--;
+    indent.delete(0, Math.min(DEFAULT_INDENT.length(), indent.length()));
     return true;
   }
+
+  /**
+   * @return the tree of all nodes visited so far
+   */
+  @Override
+  public String toString() {
+    return tree.toString();
+  }
+
+  /**
+   * Appends the indent, its trailing branch turned into a terminal for the
+   * last child.
+   */
+  private void appendIndent(boolean lastChild) {
+    int length = indent.length();
+    int branch = length - DEFAULT_BRANCH.length();
+    if (lastChild && branch >= 0 && indent.indexOf(DEFAULT_BRANCH, branch) == branch) {
+      tree.append(indent, 0, branch).append(DEFAULT_TERMINAL);
+    } else {
+      tree.append(indent);
+    }
+  }
 }
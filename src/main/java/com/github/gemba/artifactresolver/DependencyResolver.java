@@ -7,11 +7,30 @@ package com.github.gemba.artifactresolver;
  * which accompanies this distribution (see COPYING), and is available at
  *   http://www.eclipse.org/legal/epl-v10.html
  *******************************************************************************/
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.collection.DependencyCollectionException;
 import org.eclipse.aether.graph.Dependency;
 import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.eclipse.aether.resolution.ArtifactResult;
 import org.eclipse.aether.resolution.DependencyRequest;
 import org.eclipse.aether.resolution.DependencyResolutionException;
@@ -19,8 +38,6 @@ import org.eclipse.aether.resolution.DependencyResult;
 import org.eclipse.aether.util.artifact.JavaScopes;
 import org.eclipse.aether.graph.DependencyFilter;
 import org.eclipse.aether.util.filter.DependencyFilterUtils;
-import org.eclipse.aether.util.graph.visitor.FilteringDependencyVisitor;
-import org.eclipse.aether.util.graph.visitor.TreeDependencyVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,8 +51,28 @@ public class DependencyResolver {
 
   private static final Logger log = LoggerFactory.getLogger(DependencyResolver.class);
 
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+  private static final DependencyFilter CLASSPATH_FILTER = DependencyFilterUtils.classpathFilter(JavaScopes.TEST);
+
   private RepositorySystemHelper repoSystemHelper;
 
+  private NotFoundCache notFoundCache;
+
+  private LockFile lockFile;
+
+  private RunReport runReport;
+
+  private ExportManifest previousExport;
+
+  private TreeFormat treeFormat = TreeFormat.TEXT;
+
+  private Writer treeWriter;
+
+  private boolean quietTree;
+
+  private ResolutionSummary summary;
+
   /**
    * Default constructor.
    * 
@@ -46,6 +83,80 @@ public class DependencyResolver {
     this.repoSystemHelper = repoSystemHelper;
   }
 
+  /**
+   * Sets the cache of artifacts known to be missing. Artifacts in the cache are
+   * not requested again.
+   * 
+   * @param notFoundCache
+   *          the cache, <code>null</code> to request every artifact
+   */
+  public void setNotFoundCache(NotFoundCache notFoundCache) {
+    this.notFoundCache = notFoundCache;
+  }
+
+  /**
+   * Sets the lock file which records the dependency graphs. The lock file
+   * records the resolved artifacts as listener of the repository system.
+   * 
+   * @param lockFile
+   *          the lock file, <code>null</code> to record nothing
+   */
+  public void setLockFile(LockFile lockFile) {
+    this.lockFile = lockFile;
+  }
+
+  /**
+   * Sets the report which measures the phases of the resolutions.
+   * 
+   * @param runReport
+   *          the report, <code>null</code> to measure nothing
+   */
+  public void setRunReport(RunReport runReport) {
+    this.runReport = runReport;
+  }
+
+  /**
+   * Sets the manifest of a previous export. The released artifacts it lists
+   * are not downloaded again.
+   * 
+   * @param previousExport
+   *          the manifest, <code>null</code> to download every artifact
+   */
+  public void setPreviousExport(ExportManifest previousExport) {
+    this.previousExport = previousExport;
+  }
+
+  /**
+   * Sets how the dependency trees are rendered.
+   * 
+   * @param treeFormat
+   *          the format of the trees
+   * @param treeWriter
+   *          where to write the trees, <code>null</code> to log them
+   */
+  public void setTreeOutput(TreeFormat treeFormat, Writer treeWriter) {
+    this.treeFormat = treeFormat;
+    this.treeWriter = treeWriter;
+  }
+
+  /**
+   * @param quietTree
+   *          <code>true</code> to skip the rendering of the dependency trees
+   */
+  public void setQuietTree(boolean quietTree) {
+    this.quietTree = quietTree;
+  }
+
+  /**
+   * Sets the summary which records the outcome of each root artifact.
+   * 
+   * @param summary
+   *          the summary, <code>null</code> to record nothing
+   */
+  public void setSummary(ResolutionSummary summary) {
+    this.summary = summary;
+  }
+
   /**
    * Resolves and downloads an artifact with its dependencies.
    * 
@@ -62,59 +173,505 @@ public class DependencyResolver {
    */
   public void downloadDependencyTree(DefaultArtifact artifact, boolean javadoc, boolean sources)
       throws DependencyCollectionException, DependencyResolutionException {
-    log.info("Resolving: {} with these dependencies ...", artifact.toString());
+    log.debug("Collecting dependencies of {}", artifact);
 
     Dependency dependency = new Dependency(artifact, JavaScopes.COMPILE);
 
-    DependencyNode jarNode = repoSystemHelper.collectDependencies(dependency);
+    PhaseEvent phase = new PhaseEvent(RunReport.Phase.COLLECT, artifact);
+    DependencyNode jarNode;
+    try {
+      jarNode = repoSystemHelper.collectDependencies(dependency);
+    } catch (DependencyCollectionException dce) {
+      if (summary != null) {
+        summary.failed(artifact.toString(), dce.getMessage());
+      }
+      throw dce;
+    } finally {
+      phaseFinished(phase);
+    }
+
+    DependencyGraph graph = newGraph();
+    int root = graph.add(jarNode, CLASSPATH_FILTER);
+    printDependencyTree(artifact, graph, root);
+
+    List<Artifact> resolvedArtifacts;
+    try {
+      resolvedArtifacts = resolveDependencies(jarNode);
+    } catch (DependencyResolutionException dre) {
+      if (summary != null) {
+        summary.resolved(artifact.toString(), graph, root, getFailures(dre.getResult().getArtifactResults()));
+      }
+      throw dre;
+    }
+    if (summary != null) {
+      summary.resolved(artifact.toString(), graph, root, Collections.<String, String> emptyMap());
+    }
+
+    if (lockFile != null) {
+      lockFile.addRoot(graph, root);
+    }
+
+    downloadAttachments(resolvedArtifacts, javadoc, sources);
+  }
+
+  /**
+   * Resolves and downloads several artifacts with their dependencies as one
+   * merged graph. Each POM is read once for all artifacts, but conflicting
+   * versions are mediated across all artifacts: of two versions of the same
+   * dependency only the nearest one is downloaded.
+   * 
+   * @param artifacts
+   *          artifacts to resolve
+   * @param javadoc
+   *          <code>true</code> if javadoc attachment should be retrieved too
+   * @param sources
+   *          <code>true</code> if sources attachment should be retrieved too
+   * @throws DependencyCollectionException
+   *           if the dependency graph could not be properly assembled
+   * @throws DependencyResolutionException
+   *           if a dependency is not resolvable
+   */
+  public void downloadMergedDependencyTree(Iterable<DefaultArtifact> artifacts, boolean javadoc, boolean sources)
+      throws DependencyCollectionException, DependencyResolutionException {
+    List<Dependency> dependencies = new ArrayList<Dependency>();
+    for (DefaultArtifact artifact : artifacts) {
+      dependencies.add(new Dependency(artifact, JavaScopes.COMPILE));
+    }
+    log.debug("Collecting dependencies of {} artifacts", dependencies.size());
 
-    DependencyFilter classpathFilter = DependencyFilterUtils.classpathFilter(JavaScopes.TEST);
-    jarNode.accept(new TreeDependencyVisitor(new FilteringDependencyVisitor(new DependencyGraphPrinter(), classpathFilter)));
+    PhaseEvent phase = new PhaseEvent(RunReport.Phase.COLLECT, null);
+    DependencyNode rootNode;
+    try {
+      rootNode = repoSystemHelper.collectDependencies(dependencies);
+    } catch (DependencyCollectionException dce) {
+      if (summary != null) {
+        for (Dependency dependency : dependencies) {
+          summary.failed(dependency.getArtifact().toString(), dce.getMessage());
+        }
+      }
+      throw dce;
+    } finally {
+      phaseFinished(phase);
+    }
 
-    DependencyRequest dependencyRequest = new DependencyRequest(jarNode, classpathFilter);
-    DependencyResult dependencyResult = repoSystemHelper.resolveDependencies(dependencyRequest);
+    DependencyGraph graph = newGraph();
+    int[] roots = new int[rootNode.getChildren().size()];
+    for (int i = 0; i < roots.length; i++) {
+      DependencyNode jarNode = rootNode.getChildren().get(i);
+      roots[i] = graph.add(jarNode, CLASSPATH_FILTER);
+      printDependencyTree(jarNode.getArtifact(), graph, roots[i]);
+    }
 
-    if (javadoc) {
-      downloadAttachments(dependencyResult, "javadoc");
+    List<Artifact> resolvedArtifacts;
+    try {
+      resolvedArtifacts = resolveDependencies(rootNode);
+    } catch (DependencyResolutionException dre) {
+      summarize(graph, roots, getFailures(dre.getResult().getArtifactResults()));
+      throw dre;
     }
+    summarize(graph, roots, Collections.<String, String> emptyMap());
 
-    if (sources) {
-      downloadAttachments(dependencyResult, "sources");
+    if (lockFile != null) {
+      for (int root : roots) {
+        lockFile.addRoot(graph, root);
+      }
     }
+
+    downloadAttachments(resolvedArtifacts, javadoc, sources);
   }
 
   /**
-   * Downloads additional artifacts like javadoc or sources.
+   * Downloads the artifacts recorded in a lock file without collecting their
+   * dependencies. The downloaded artifacts are verified against the checksums
+   * of the lock file.
    * 
-   * @param depResult
-   *          a set of resolved dependencies
+   * @param lockedArtifacts
+   *          the lock file to replay
+   * @throws ArtifactResolutionException
+   *           if a locked artifact is not resolvable
+   * @throws IOException
+   *           if a downloaded artifact does not match its checksum
+   */
+  public void downloadLockedArtifacts(LockFile lockedArtifacts) throws ArtifactResolutionException, IOException {
+    DependencyGraph graph = lockedArtifacts.getGraph();
+    int[] roots = lockedArtifacts.getRoots();
+    for (int root : roots) {
+      printDependencyTree(graph.getArtifact(root), graph, root);
+    }
+
+    List<ArtifactRequest> requests = new ArrayList<ArtifactRequest>();
+    for (Artifact artifact : lockedArtifacts.getArtifacts()) {
+      if (previousExport != null && previousExport.contains(artifact)) {
+        continue;
+      }
+      requests.add(new ArtifactRequest(artifact, repoSystemHelper.getRepositories(), null));
+    }
+    log.info("Downloading {} locked artifacts ...", requests.size());
+
+    PhaseEvent phase = new PhaseEvent(RunReport.Phase.RESOLVE, null);
+    List<ArtifactResult> results;
+    try {
+      results = repoSystemHelper.resolveArtifacts(requests);
+    } catch (ArtifactResolutionException are) {
+      summarize(graph, roots, getFailures(are.getResults()));
+      throw are;
+    } finally {
+      phaseFinished(phase);
+    }
+
+    Map<String, String> mismatches = new HashMap<String, String>();
+    for (ArtifactResult result : results) {
+      Artifact artifact = result.getArtifact();
+      String sha1 = Checksums.sha1(artifact.getFile());
+      if (!sha1.equals(lockedArtifacts.getSha1(artifact))) {
+        log.error("Checksum of {} does not match the lock file: {}", artifact, sha1);
+        mismatches.put(artifact.toString(), "SHA-1 " + sha1 + " does not match the lock file");
+      }
+    }
+    summarize(graph, roots, mismatches);
+    if (mismatches.size() > 0) {
+      throw new IOException(mismatches.size() + " artifacts do not match the checksums of the lock file");
+    }
+
+    if (lockFile != null) {
+      for (int root : roots) {
+        lockFile.addRoot(graph, root);
+      }
+    }
+  }
+
+  /**
+   * Resolves and downloads several artifacts with their dependencies. With more
+   * than one thread the artifacts are resolved concurrently by a bounded pool
+   * of workers, otherwise one after another. The artifacts are taken from the
+   * iterator only as fast as the workers can handle them.
+   * <p>
+   * A failed artifact does not stop the others. The first failure is
+   * rethrown once all artifacts are finished, the summary, if set, lists
+   * every failure.
+   * 
+   * @param artifacts
+   *          artifacts to resolve
+   * @param javadoc
+   *          <code>true</code> if javadoc attachment should be retrieved too
+   * @param sources
+   *          <code>true</code> if sources attachment should be retrieved too
+   * @param threads
+   *          number of artifacts to resolve at the same time
+   * @throws DependencyCollectionException
+   *           if the dependency graph could not be properly assembled
+   * @throws DependencyResolutionException
+   *           if a dependency is not resolvable
+   * @throws InterruptedException
+   *           if interrupted while waiting for the workers
+   */
+  public void downloadDependencyTrees(Iterable<DefaultArtifact> artifacts, final boolean javadoc, final boolean sources,
+      int threads) throws DependencyCollectionException, DependencyResolutionException, InterruptedException {
+
+    final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+    if (threads <= 1) {
+      for (DefaultArtifact artifact : artifacts) {
+        try {
+          downloadDependencyTree(artifact, javadoc, sources);
+        } catch (Exception e) {
+          log.error("Resolving {} failed: {}", artifact, e.getMessage());
+          failure.compareAndSet(null, e);
+        }
+      }
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(threads, new ResolverThreadFactory());
+      // bounds the artifacts waiting for a worker
+      final Semaphore pending = new Semaphore(2 * threads);
+
+      try {
+        for (final DefaultArtifact artifact : artifacts) {
+          pending.acquire();
+          executor.execute(new MdcRunnable(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                downloadDependencyTree(artifact, javadoc, sources);
+              } catch (Exception e) {
+                log.error("Resolving {} failed: {}", artifact, e.getMessage());
+                failure.compareAndSet(null, e);
+              } finally {
+                pending.release();
+              }
+            }
+          }));
+        }
+      } finally {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    Exception e = failure.get();
+    if (e instanceof DependencyCollectionException) {
+      throw (DependencyCollectionException) e;
+    } else if (e instanceof DependencyResolutionException) {
+      throw (DependencyResolutionException) e;
+    } else if (e != null) {
+      throw (RuntimeException) e;
+    }
+  }
+
+  /**
+   * Downloads the artifacts of a dependency graph. Artifacts known to be
+   * missing are skipped, as are the released artifacts of the previous export.
+   * 
+   * @param node
+   *          the root of the graph
+   * @return the downloaded artifacts and those of the previous export
+   * @throws DependencyResolutionException
+   *           if a dependency is not resolvable
+   */
+  private List<Artifact> resolveDependencies(DependencyNode node) throws DependencyResolutionException {
+    DependencyFilter filter = CLASSPATH_FILTER;
+    if (notFoundCache != null) {
+      filter = DependencyFilterUtils.andFilter(filter, new KnownMissingFilter());
+    }
+    ExportedFilter exportedFilter = null;
+    if (previousExport != null) {
+      exportedFilter = new ExportedFilter();
+      filter = DependencyFilterUtils.andFilter(filter, exportedFilter);
+    }
+
+    PhaseEvent phase = new PhaseEvent(RunReport.Phase.RESOLVE, node.getArtifact());
+    DependencyResult dependencyResult;
+    try {
+      dependencyResult = repoSystemHelper.resolveDependencies(new DependencyRequest(node, filter));
+    } catch (DependencyResolutionException dre) {
+      if (notFoundCache != null) {
+        for (ArtifactResult result : dre.getResult().getArtifactResults()) {
+          notFoundCache.update(result);
+        }
+      }
+      throw dre;
+    } finally {
+      phaseFinished(phase);
+    }
+
+    List<Artifact> artifacts = new ArrayList<Artifact>();
+    for (ArtifactResult artifactResult : dependencyResult.getArtifactResults()) {
+      artifacts.add(artifactResult.getArtifact());
+    }
+    if (exportedFilter != null) {
+      artifacts.addAll(exportedFilter.skipped);
+    }
+    return artifacts;
+  }
+
+  /**
+   * @return the graph to keep the dependency trees in, the one of the lock
+   *         file if recorded
+   */
+  private DependencyGraph newGraph() {
+    return lockFile != null ? lockFile.getGraph() : new DependencyGraph();
+  }
+
+  /**
+   * Logs the dependency tree of an artifact, or writes it to the tree writer if
+   * set. The tree is not rendered at all in quiet mode.
+   * 
+   * @param artifact
+   *          the resolved artifact
+   * @param graph
+   *          the graph of the node
+   * @param jarNode
+   *          the node of the artifact
+   */
+  private void printDependencyTree(Artifact artifact, DependencyGraph graph, int jarNode) {
+    if (quietTree) {
+      log.info("Resolving: {}", artifact);
+      return;
+    }
+
+    DependencyGraph.Visitor printer = treeFormat.newPrinter();
+    graph.accept(jarNode, printer);
+
+    if (treeWriter == null) {
+      log.info("Resolving: {} with these dependencies ...{}{}", artifact, LINE_SEPARATOR, printer);
+      return;
+    }
+
+    log.info("Resolving: {}", artifact);
+    String tree = printer.toString();
+    try {
+      synchronized (treeWriter) {
+        treeWriter.write(tree);
+        treeWriter.write(LINE_SEPARATOR);
+      }
+    } catch (IOException ioe) {
+      log.warn("Cannot write the dependency tree of {}: {}", artifact, ioe.getMessage());
+    }
+  }
+
+  /**
+   * Downloads additional artifacts like javadoc or sources. All attachments
+   * are requested as one batch of plain artifacts, which are downloaded
+   * concurrently.
+   * 
+   * @param artifacts
+   *          the artifacts of a dependency graph
+   * @param javadoc
+   *          <code>true</code> if javadoc attachment should be retrieved
+   * @param sources
+   *          <code>true</code> if sources attachment should be retrieved
+   */
+  private void downloadAttachments(List<Artifact> artifacts, boolean javadoc, boolean sources) {
+    List<ArtifactRequest> requests = new ArrayList<ArtifactRequest>();
+
+    for (Artifact artifact : artifacts) {
+      if (javadoc) {
+        addAttachmentRequest(requests, artifact, "javadoc");
+      }
+      if (sources) {
+        addAttachmentRequest(requests, artifact, "sources");
+      }
+    }
+
+    if (requests.isEmpty()) {
+      return;
+    }
+
+    PhaseEvent phase = new PhaseEvent(RunReport.Phase.ATTACHMENTS, null);
+    List<ArtifactResult> results;
+    try {
+      results = repoSystemHelper.resolveArtifacts(requests);
+    } catch (ArtifactResolutionException are) {
+      results = are.getResults();
+    } finally {
+      phaseFinished(phase);
+    }
+
+    for (ArtifactResult result : results) {
+      if (notFoundCache != null) {
+        notFoundCache.update(result);
+      }
+      if (!result.isResolved()) {
+        Artifact attachment = result.getRequest().getArtifact();
+        log.warn("No {} found for {}", attachment.getClassifier(), attachment);
+      }
+    }
+  }
+
+  /**
+   * Adds the request for an attachment of an artifact unless the attachment is
+   * known to be missing.
+   * 
+   * @param requests
+   *          the requests to add to
+   * @param artifact
+   *          the resolved artifact
    * @param attachment
    *          type of attachment. Either "javadoc" or "sources"
-   * @throws DependencyCollectionException
    */
-  private void downloadAttachments(DependencyResult depResult, final String attachment) throws DependencyCollectionException {
+  private void addAttachmentRequest(List<ArtifactRequest> requests, Artifact artifact, String attachment) {
+    DefaultArtifact extraArtifact = new DefaultArtifact(artifact.getGroupId(), artifact.getArtifactId(), attachment,
+        artifact.getExtension(), artifact.getVersion());
 
-    for (ArtifactResult artifactResult : depResult.getArtifactResults()) {
+    if (notFoundCache != null && notFoundCache.isMissing(extraArtifact)) {
+      log.debug("Skipping {} for {}, known to be missing", attachment, artifact);
+      return;
+    }
+    if (previousExport != null && previousExport.contains(extraArtifact)) {
+      log.debug("Skipping {} for {}, exported before", attachment, artifact);
+      return;
+    }
 
-      final Artifact artifact = artifactResult.getArtifact();
-      final String artifactId = artifact.getArtifactId();
-      final String groupId = artifact.getGroupId();
-      final String extension = artifact.getExtension();
-      final String version = artifact.getVersion();
+    log.info("Resolving {} for {}", attachment, artifact);
+    requests.add(new ArtifactRequest(extraArtifact, repoSystemHelper.getRepositories(), null));
+  }
 
-      log.info("Resolving {} for {}", attachment, artifact);
+  /**
+   * Records the outcome of the roots of a graph in the summary.
+   * 
+   * @param graph
+   *          the graph of the roots
+   * @param roots
+   *          the root nodes
+   * @param failures
+   *          coordinates -> reason of the artifacts which failed
+   */
+  private void summarize(DependencyGraph graph, int[] roots, Map<String, String> failures) {
+    if (summary != null) {
+      for (int root : roots) {
+        summary.resolved(graph.getCoordinates(root), graph, root, failures);
+      }
+    }
+  }
 
-      try {
-        DefaultArtifact extraArtifact = new DefaultArtifact(groupId, artifactId, attachment, extension, version);
-        Dependency attachedDependency = new Dependency(extraArtifact, JavaScopes.COMPILE);
+  /**
+   * @return coordinates -> reason of the artifacts which were not resolved
+   */
+  private static Map<String, String> getFailures(List<ArtifactResult> results) {
+    Map<String, String> failures = new HashMap<String, String>();
+    for (ArtifactResult result : results) {
+      if (!result.isResolved()) {
+        List<Exception> exceptions = result.getExceptions();
+        failures.put(result.getRequest().getArtifact().toString(),
+            exceptions.isEmpty() ? "not resolved" : exceptions.get(0).getMessage());
+      }
+    }
+    return failures;
+  }
 
-        DependencyNode attachmentNode = repoSystemHelper.collectDependencies(attachedDependency);
-        DependencyRequest javadocDependencyRequest = new DependencyRequest(attachmentNode, null);
+  private void phaseFinished(PhaseEvent phase) {
+    phase.commit();
+    if (runReport != null) {
+      runReport.phaseFinished(phase.getType(), phase.getStartNanos());
+    }
+  }
 
-        repoSystemHelper.resolveDependencies(javadocDependencyRequest);
-      } catch (DependencyResolutionException de) {
-        log.warn("No {} found for {}", attachment, artifact);
+  /**
+   * Excludes artifacts which are known to be missing from a resolution.
+   */
+  private class KnownMissingFilter implements DependencyFilter {
+
+    @Override
+    public boolean accept(DependencyNode node, List<DependencyNode> parents) {
+      Artifact artifact = node.getArtifact();
+      if (artifact != null && notFoundCache.isMissing(artifact)) {
+        log.warn("Skipping {}, not found by a previous run (use --refresh to retry)", artifact);
+        return false;
       }
+      return true;
+    }
+  }
+
+  /**
+   * Excludes released artifacts of the previous export from a resolution. The
+   * skipped artifacts are kept, as their attachments may not be exported yet.
+   */
+  private class ExportedFilter implements DependencyFilter {
+
+    private final Set<Artifact> skipped = new LinkedHashSet<Artifact>();
+
+    @Override
+    public boolean accept(DependencyNode node, List<DependencyNode> parents) {
+      Artifact artifact = node.getArtifact();
+      if (artifact != null && previousExport.contains(artifact)) {
+        if (skipped.add(artifact)) {
+          log.debug("Skipping {}, exported before", artifact);
+        }
+        return false;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Names the worker threads of concurrent resolutions.
+   */
+  private static class ResolverThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      return new Thread(runnable, "resolver-" + count.incrementAndGet());
     }
   }
 }
@@ -0,0 +1,72 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Renders the dependencies of an artifact as Graphviz DOT digraph, one edge
+ * per dependency labeled with its scope.
+ *
+ * @author Gemba
+ */
+public class DotGraphPrinter implements DependencyGraph.Visitor {
+
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+  // ids of the nodes from the root to the current node
+  private final List<String> parents = new ArrayList<String>();
+
+  // rendered graph
+  private final StringBuilder dot = new StringBuilder(1024);
+
+  @Override
+  public boolean visitEnter(DependencyGraph graph, int node) {
+    String id = quote(graph.getCoordinates(node));
+    if (parents.isEmpty()) {
+      dot.append("digraph ").append(id).append(" {").append(LINE_SEPARATOR);
+      dot.append("  ").append(id).append(';').append(LINE_SEPARATOR);
+    } else {
+      dot.append("  ").append(parents.get(parents.size() - 1)).append(" -> ").append(id);
+      String scope = graph.getScope(node);
+      if (scope != null) {
+        dot.append(" [label=\"").append(scope);
+        if (graph.isOptional(node)) {
+          dot.append(", optional");
+        }
+        dot.append("\"]");
+      }
+      dot.append(';').append(LINE_SEPARATOR);
+    }
+    parents.add(id);
+    return true;
+  }
+
+  @Override
+  public boolean visitLeave(DependencyGraph graph, int node) {
+    parents.remove(parents.size() - 1);
+    if (parents.isEmpty()) {
+      dot.append('}');
+    }
+    return true;
+  }
+
+  /**
+   * @return the graph of all nodes visited so far
+   */
+  @Override
+  public String toString() {
+    return dot.toString();
+  }
+
+  private static String quote(String id) {
+    return "\"" + id.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+}
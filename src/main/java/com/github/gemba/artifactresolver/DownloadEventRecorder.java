@@ -0,0 +1,93 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import org.eclipse.aether.transfer.AbstractTransferListener;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferResource;
+
+/**
+ * Emits a flight recorder event per download, from its initiation to its
+ * success or failure. Nothing is tracked unless a recording with the event
+ * enabled is running.
+ *
+ * @author Gemba
+ */
+public class DownloadEventRecorder extends AbstractTransferListener {
+
+  // running downloads -> their event
+  private final Map<TransferResource, DownloadEvent> events = new ConcurrentHashMap<TransferResource, DownloadEvent>();
+
+  @Override
+  public void transferInitiated(TransferEvent event) {
+    if (event.getRequestType() != TransferEvent.RequestType.GET) {
+      return;
+    }
+    DownloadEvent download = new DownloadEvent();
+    if (download.isEnabled()) {
+      TransferResource resource = event.getResource();
+      download.repository = resource.getRepositoryUrl();
+      download.resource = resource.getResourceName();
+      download.begin();
+      events.put(resource, download);
+    }
+  }
+
+  @Override
+  public void transferSucceeded(TransferEvent event) {
+    finished(event, false);
+  }
+
+  @Override
+  public void transferFailed(TransferEvent event) {
+    finished(event, true);
+  }
+
+  private void finished(TransferEvent event, boolean failed) {
+    DownloadEvent download = events.remove(event.getResource());
+    if (download != null) {
+      download.bytes = event.getTransferredBytes();
+      download.failed = failed;
+      download.commit();
+    }
+  }
+
+  /**
+   * Download of one file, including POMs, metadata and checksums.
+   */
+  @Name("com.github.gemba.artifactresolver.Download")
+  @Label("Repository Download")
+  @Category("Maven Dependency Downloader")
+  @Description("Download of a file from a remote repository")
+  static class DownloadEvent extends Event {
+
+    @Label("Repository")
+    String repository;
+
+    @Label("Resource")
+    String resource;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Failed")
+    @Description("Not found or failed by the network or the server")
+    boolean failed;
+  }
+}
@@ -0,0 +1,416 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.ArtifactDownload;
+import org.eclipse.aether.spi.connector.ArtifactUpload;
+import org.eclipse.aether.spi.connector.MetadataDownload;
+import org.eclipse.aether.spi.connector.MetadataUpload;
+import org.eclipse.aether.spi.connector.RepositoryConnector;
+import org.eclipse.aether.spi.connector.layout.RepositoryLayout;
+import org.eclipse.aether.transfer.ArtifactTransferException;
+import org.eclipse.aether.transfer.NoTransporterException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Schedules the artifact downloads of all concurrent resolutions, per
+ * repository. Each repository downloads at most a fixed number of artifacts
+ * at the same time, the largest waiting one first: a large artifact started
+ * last would stretch the end of the run. Metadata is downloaded right away.
+ * <p>
+ * Sizes are known from a replayed lock file. Unknown sizes are asked with
+ * HEAD requests, or from the file system for <code>file:</code> repositories,
+ * but only while more artifacts wait than the repository may download. POMs
+ * count as small and are never asked. Artifacts of unknown size follow the
+ * ones of known size.
+ * <p>
+ * A download runs with the MDC of the resolution which requested it, so its
+ * log reaches the daemon client of that resolution.
+ *
+ * @author Gemba
+ */
+public class DownloadScheduler {
+
+  private static final Logger log = LoggerFactory.getLogger(DownloadScheduler.class);
+
+  /** default number of concurrent downloads per repository */
+  public static final int DEFAULT_CONNECTIONS = 8;
+
+  private static final long UNKNOWN = -1;
+
+  // time to wait for the sizes of one batch
+  private static final long PROBE_TIMEOUT_MILLIS = 5000;
+
+  private final int connections;
+
+  private final ExecutorService executor = Executors.newCachedThreadPool(new DownloadThreadFactory());
+
+  // sends the HEAD requests, also if the downloads use the Apache client
+  private final JdkHttpTransporterFactory probeFactory = new JdkHttpTransporterFactory();
+
+  // repository id and url -> lane
+  private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+
+  // artifact coordinates -> size in bytes
+  private final ConcurrentMap<String, Long> sizes = new ConcurrentHashMap<String, Long>();
+
+  // keeps the order of artifacts of equal size
+  private final AtomicLong sequence = new AtomicLong();
+
+  /**
+   * @param connections
+   *          the number of artifacts downloaded from each repository at the
+   *          same time
+   */
+  public DownloadScheduler(int connections) {
+    if (connections < 1) {
+      throw new IllegalArgumentException("At least one connection per repository is needed: " + connections);
+    }
+    this.connections = connections;
+  }
+
+  /**
+   * Remembers the size of an artifact, e.g. from a lock file.
+   *
+   * @param artifact
+   *          the artifact
+   * @param size
+   *          the size of its file in bytes
+   */
+  public void setSize(Artifact artifact, long size) {
+    sizes.put(artifact.toString(), Long.valueOf(size));
+  }
+
+  /**
+   * Wraps a connector, its artifact downloads are scheduled by this scheduler.
+   *
+   * @param session
+   *          the session of the connector
+   * @param repository
+   *          the repository of the connector
+   * @param layout
+   *          the layout of the repository, <code>null</code> to ask no sizes
+   * @param connector
+   *          the connector doing the downloads
+   * @return the scheduled connector
+   */
+  public RepositoryConnector newConnector(RepositorySystemSession session, RemoteRepository repository,
+      RepositoryLayout layout, RepositoryConnector connector) {
+    return new ScheduledRepositoryConnector(connector, session, repository, layout, getLane(repository));
+  }
+
+  /**
+   * Stops the idle download threads. Downloads still running are finished.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private Lane getLane(RemoteRepository repository) {
+    String key = repository.getId() + " " + repository.getUrl();
+    Lane lane = lanes.get(key);
+    if (lane == null) {
+      Lane newLane = new Lane();
+      lane = lanes.putIfAbsent(key, newLane);
+      if (lane == null) {
+        lane = newLane;
+      }
+    }
+    return lane;
+  }
+
+  private long getKnownSize(Artifact artifact) {
+    Long size = sizes.get(artifact.toString());
+    if (size != null) {
+      return size.longValue();
+    }
+    return "pom".equals(artifact.getExtension()) ? 0 : UNKNOWN;
+  }
+
+  /**
+   * The downloads waiting for a repository, largest first.
+   */
+  private class Lane {
+
+    private final PriorityQueue<Job> queue = new PriorityQueue<Job>();
+
+    // runners taking downloads from the queue
+    private int active;
+
+    /**
+     * @return <code>true</code> if some of the downloads would have to wait
+     */
+    synchronized boolean isCrowded(int downloads) {
+      return queue.size() + downloads > connections - active;
+    }
+
+    void submit(List<Job> jobs) {
+      int runners;
+      synchronized (this) {
+        queue.addAll(jobs);
+        runners = Math.min(queue.size(), connections - active);
+        active += runners;
+      }
+      for (int i = 0; i < runners; i++) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            for (Job job = next(); job != null; job = next()) {
+              job.run();
+            }
+          }
+        });
+      }
+    }
+
+    /**
+     * @return the largest waiting download, <code>null</code> to end the
+     *         runner
+     */
+    private synchronized Job next() {
+      Job job = queue.poll();
+      if (job == null) {
+        active--;
+      }
+      return job;
+    }
+  }
+
+  /**
+   * One artifact download of a batch.
+   */
+  private class Job implements Comparable<Job> {
+
+    private final ScheduledRepositoryConnector connector;
+    private final ArtifactDownload download;
+    private final CountDownLatch done;
+    private final long order = sequence.incrementAndGet();
+    private final Map<String, String> context = MDC.getCopyOfContextMap();
+    private long size;
+
+    Job(ScheduledRepositoryConnector connector, ArtifactDownload download, CountDownLatch done) {
+      this.connector = connector;
+      this.download = download;
+      this.done = done;
+      size = getKnownSize(download.getArtifact());
+    }
+
+    void run() {
+      Map<String, String> previous = MdcRunnable.setContext(context);
+      try {
+        log.debug("Downloading {} ({} bytes)", download.getArtifact(), size);
+        connector.delegate.get(Collections.singletonList(download), null);
+      } catch (RuntimeException re) {
+        download.setException(new ArtifactTransferException(download.getArtifact(), connector.repository, re));
+      } finally {
+        MdcRunnable.setContext(previous);
+        done.countDown();
+      }
+    }
+
+    @Override
+    public int compareTo(Job other) {
+      // unknown sizes between POMs and the known sizes
+      long rank = size == UNKNOWN ? 1 : size;
+      long otherRank = other.size == UNKNOWN ? 1 : other.size;
+      if (rank != otherRank) {
+        return rank > otherRank ? -1 : 1;
+      }
+      return order < other.order ? -1 : (order == other.order ? 0 : 1);
+    }
+  }
+
+  /**
+   * Connector handing its artifact downloads to the lane of its repository.
+   */
+  private class ScheduledRepositoryConnector implements RepositoryConnector {
+
+    private final RepositoryConnector delegate;
+    private final RepositorySystemSession session;
+    private final RemoteRepository repository;
+    private final RepositoryLayout layout;
+    private final Lane lane;
+
+    ScheduledRepositoryConnector(RepositoryConnector delegate, RepositorySystemSession session,
+        RemoteRepository repository, RepositoryLayout layout, Lane lane) {
+      this.delegate = delegate;
+      this.session = session;
+      this.repository = repository;
+      this.layout = layout;
+      this.lane = lane;
+    }
+
+    @Override
+    public void get(Collection<? extends ArtifactDownload> artifactDownloads,
+        Collection<? extends MetadataDownload> metadataDownloads) {
+      if (metadataDownloads != null && !metadataDownloads.isEmpty()) {
+        delegate.get(null, metadataDownloads);
+      }
+      if (artifactDownloads == null || artifactDownloads.isEmpty()) {
+        return;
+      }
+
+      CountDownLatch done = new CountDownLatch(artifactDownloads.size());
+      List<Job> jobs = new ArrayList<Job>(artifactDownloads.size());
+      for (ArtifactDownload download : artifactDownloads) {
+        jobs.add(new Job(this, download, done));
+      }
+      if (lane.isCrowded(jobs.size())) {
+        probeSizes(jobs);
+      }
+      lane.submit(jobs);
+
+      boolean interrupted = false;
+      while (done.getCount() > 0) {
+        try {
+          done.await();
+        } catch (InterruptedException ie) {
+          // the downloads report to this batch
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public void put(Collection<? extends ArtifactUpload> artifactUploads,
+        Collection<? extends MetadataUpload> metadataUploads) {
+      delegate.put(artifactUploads, metadataUploads);
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+
+    @Override
+    public String toString() {
+      return delegate.toString();
+    }
+
+    /**
+     * Asks the sizes of the artifacts not known yet.
+     */
+    private void probeSizes(List<Job> jobs) {
+      List<Job> unknown = new ArrayList<Job>();
+      for (Job job : jobs) {
+        if (job.size == UNKNOWN) {
+          unknown.add(job);
+        }
+      }
+      if (unknown.isEmpty() || layout == null) {
+        return;
+      }
+
+      if ("file".equalsIgnoreCase(repository.getProtocol())) {
+        probeFiles(unknown);
+      } else {
+        probeHttp(unknown);
+      }
+    }
+
+    private void probeFiles(List<Job> jobs) {
+      File basedir;
+      try {
+        basedir = new File(URI.create(repository.getUrl()));
+      } catch (IllegalArgumentException iae) {
+        return;
+      }
+      for (Job job : jobs) {
+        File file = new File(basedir, layout.getLocation(job.download.getArtifact(), false).getPath());
+        if (file.isFile()) {
+          sized(job, file.length());
+        }
+      }
+    }
+
+    private void probeHttp(List<Job> jobs) {
+      JdkHttpTransporterFactory.JdkHttpTransporter transporter;
+      try {
+        transporter = (JdkHttpTransporterFactory.JdkHttpTransporter) probeFactory.newInstance(session, repository);
+      } catch (NoTransporterException nte) {
+        return;
+      }
+
+      long deadline = System.currentTimeMillis() + PROBE_TIMEOUT_MILLIS;
+      try {
+        // no more requests at a time than downloads
+        for (int start = 0; start < jobs.size(); start += connections) {
+          List<Job> chunk = jobs.subList(start, Math.min(start + connections, jobs.size()));
+          List<CompletableFuture<Long>> lengths = new ArrayList<CompletableFuture<Long>>(chunk.size());
+          for (Job job : chunk) {
+            lengths.add(transporter.getContentLength(layout.getLocation(job.download.getArtifact(), false)));
+          }
+          for (int i = 0; i < chunk.size(); i++) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+              log.debug("Stopped asking the sizes of {} artifacts from '{}'", jobs.size() - start - i,
+                  repository.getId());
+              return;
+            }
+            try {
+              sized(chunk.get(i), lengths.get(i).get(wait, TimeUnit.MILLISECONDS).longValue());
+            } catch (Exception e) {
+              log.debug("Cannot ask the size of {}: {}", chunk.get(i).download.getArtifact(), e.getMessage());
+            }
+          }
+        }
+      } finally {
+        transporter.close();
+      }
+    }
+
+    private void sized(Job job, long size) {
+      if (size >= 0) {
+        job.size = size;
+        setSize(job.download.getArtifact(), size);
+      }
+    }
+  }
+
+  /**
+   * Names the download threads, which do not keep the JVM running.
+   */
+  private static class DownloadThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "download-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
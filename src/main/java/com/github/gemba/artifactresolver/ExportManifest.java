@@ -0,0 +1,164 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.aether.artifact.Artifact;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Lists the artifacts of an export with their path in the maven layout, their
+ * SHA-1 checksum and their size, one JSON object per line.
+ * <p>
+ * A delta export starts from the manifest of the previous export, so that the
+ * manifest always lists all artifacts exported so far.
+ *
+ * @author Gemba
+ */
+public class ExportManifest {
+
+  /** name of the manifest in the archive */
+  public static final String FILE_NAME = "mvn-dd-export.json";
+
+  private static final String ARTIFACTS = "artifacts";
+  private static final String ARTIFACT = "artifact";
+  private static final String PATH = "path";
+  private static final String SHA1 = "sha1";
+  private static final String SIZE = "size";
+
+  // artifact coordinates -> serialized artifact
+  private final Map<String, JSONObject> artifacts = new TreeMap<String, JSONObject>();
+
+  /**
+   * Reads the manifest of an export.
+   *
+   * @param file
+   *          the manifest to read
+   * @return the manifest
+   * @throws IOException
+   *           if the file is not readable
+   * @throws ParseException
+   *           if the file is no valid JSON
+   */
+  public static ExportManifest read(File file) throws IOException, ParseException {
+    JSONObject json;
+    Reader reader = null;
+    try {
+      reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+      json = (JSONObject) new JSONParser().parse(reader);
+    } finally {
+      IOUtils.closeQuietly(reader);
+    }
+
+    ExportManifest manifest = new ExportManifest();
+    for (Object obj : (JSONArray) json.get(ARTIFACTS)) {
+      JSONObject artifact = (JSONObject) obj;
+      manifest.artifacts.put((String) artifact.get(ARTIFACT), artifact);
+    }
+    return manifest;
+  }
+
+  /**
+   * Adds the artifacts of another manifest.
+   *
+   * @param other
+   *          the manifest to add
+   */
+  public void addAll(ExportManifest other) {
+    Map<String, JSONObject> copy;
+    synchronized (other) {
+      copy = new TreeMap<String, JSONObject>(other.artifacts);
+    }
+    synchronized (this) {
+      artifacts.putAll(copy);
+    }
+  }
+
+  /**
+   * @param artifact
+   *          the artifact to look up
+   * @return <code>true</code> if the artifact is a release listed in this
+   *         manifest; a snapshot may have changed since
+   */
+  public synchronized boolean contains(Artifact artifact) {
+    return !artifact.isSnapshot() && artifacts.containsKey(artifact.toString());
+  }
+
+  /**
+   * @param artifact
+   *          the coordinates of the artifact
+   * @param sha1
+   *          the SHA-1 checksum of the artifact
+   * @return <code>true</code> if the artifact is listed with this checksum
+   */
+  public synchronized boolean contains(String artifact, String sha1) {
+    JSONObject json = artifacts.get(artifact);
+    return json != null && sha1.equals(json.get(SHA1));
+  }
+
+  /**
+   * Adds an artifact.
+   *
+   * @param artifact
+   *          the coordinates of the artifact
+   * @param path
+   *          the path in the maven layout
+   * @param sha1
+   *          the SHA-1 checksum of the artifact
+   * @param size
+   *          the size of the artifact in bytes
+   */
+  @SuppressWarnings("unchecked")
+  public synchronized void add(String artifact, String path, String sha1, long size) {
+    JSONObject json = new JSONObject();
+    json.put(ARTIFACT, artifact);
+    json.put(PATH, path);
+    json.put(SHA1, sha1);
+    json.put(SIZE, size);
+    artifacts.put(artifact, json);
+  }
+
+  /**
+   * @return the number of artifacts
+   */
+  public synchronized int size() {
+    return artifacts.size();
+  }
+
+  /**
+   * @return the manifest as UTF-8 encoded JSON
+   */
+  public synchronized byte[] toBytes() {
+    StringBuilder text = new StringBuilder("{\n\"" + ARTIFACTS + "\": [");
+    Iterator<JSONObject> iterator = artifacts.values().iterator();
+    while (iterator.hasNext()) {
+      text.append("\n  ").append(iterator.next().toJSONString());
+      if (iterator.hasNext()) {
+        text.append(',');
+      }
+    }
+    text.append("\n]\n}\n");
+    try {
+      return text.toString().getBytes("UTF-8");
+    } catch (IOException ioe) {
+      throw new IllegalStateException(ioe);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.IOException;
+
+/**
+ * A request answered with an unexpected HTTP status.
+ *
+ * @author Gemba
+ */
+public class HttpStatusException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int statusCode;
+
+  /**
+   * @param statusCode
+   *          the status of the response
+   * @param message
+   *          the request and the status
+   */
+  public HttpStatusException(int statusCode, String message) {
+    super(message);
+    this.statusCode = statusCode;
+  }
+
+  /**
+   * @return the status of the response
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+}
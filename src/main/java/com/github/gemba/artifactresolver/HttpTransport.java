@@ -0,0 +1,23 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+/**
+ * The HTTP clients which may download from remote repositories.
+ *
+ * @author Gemba
+ */
+public enum HttpTransport {
+
+  /** the Apache HttpClient of Aether, one connection per transfer */
+  APACHE,
+
+  /** the HTTP client of the JDK, multiplexes HTTP/2 connections */
+  JDK
+}
@@ -0,0 +1,199 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.LocalArtifactRegistration;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+import org.eclipse.aether.repository.LocalMetadataRegistration;
+import org.eclipse.aether.repository.LocalMetadataRequest;
+import org.eclipse.aether.repository.LocalMetadataResult;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local repository manager answering the lookups of release artifacts from a
+ * {@link LocalRepositoryIndex}. Artifacts missing in the index, snapshots and
+ * metadata are handled by the wrapped manager; artifacts it finds or adds are
+ * put into the index.
+ * <p>
+ * The index is trusted without looking at the files. Only when an indexed
+ * artifact is looked up, its size is checked once per session (see
+ * {@link #forgetChecks(RepositorySystemSession)}). An artifact whose file was
+ * removed or changed in size is dropped from the index and looked up by the
+ * wrapped manager.
+ *
+ * @author Gemba
+ */
+public class IndexedLocalRepositoryManager implements LocalRepositoryManager {
+
+  private static final Logger log = LoggerFactory.getLogger(IndexedLocalRepositoryManager.class);
+
+  // session data key of the paths whose file was checked against the index
+  private static final String CHECKED_KEY = IndexedLocalRepositoryManager.class.getName() + ".checked";
+
+  private final LocalRepositoryManager delegate;
+  private final LocalRepositoryIndex index;
+
+  /**
+   * @param delegate
+   *          the manager doing the actual work
+   * @param index
+   *          the index of the local repository
+   */
+  public IndexedLocalRepositoryManager(LocalRepositoryManager delegate, LocalRepositoryIndex index) {
+    this.delegate = delegate;
+    this.index = index;
+  }
+
+  @Override
+  public LocalRepository getRepository() {
+    return delegate.getRepository();
+  }
+
+  @Override
+  public String getPathForLocalArtifact(Artifact artifact) {
+    return delegate.getPathForLocalArtifact(artifact);
+  }
+
+  @Override
+  public String getPathForRemoteArtifact(Artifact artifact, RemoteRepository repository, String context) {
+    return delegate.getPathForRemoteArtifact(artifact, repository, context);
+  }
+
+  @Override
+  public String getPathForLocalMetadata(Metadata metadata) {
+    return delegate.getPathForLocalMetadata(metadata);
+  }
+
+  @Override
+  public String getPathForRemoteMetadata(Metadata metadata, RemoteRepository repository, String context) {
+    return delegate.getPathForRemoteMetadata(metadata, repository, context);
+  }
+
+  @Override
+  public LocalArtifactResult find(RepositorySystemSession session, LocalArtifactRequest request) {
+    Artifact artifact = request.getArtifact();
+    if (artifact.isSnapshot()) {
+      return delegate.find(session, request);
+    }
+
+    String path = getPathForLocalArtifact(artifact);
+    LocalRepositoryIndex.IndexEntry entry = index.get(path);
+    if (entry != null) {
+      File file = new File(getRepository().getBasedir(), path);
+      // length() is 0 for a missing file
+      if (getChecked(session).add(path) && file.length() != entry.getSize()) {
+        log.debug("Dropping {} from the index, the file was removed or changed", path);
+        removeFromIndex(path);
+      } else {
+        RemoteRepository repository = findRepository(entry.getRepositoryId(), request.getRepositories());
+        if (repository != null || entry.getRepositoryId().length() == 0) {
+          LocalArtifactResult result = new LocalArtifactResult(request);
+          result.setFile(file);
+          result.setAvailable(true);
+          result.setRepository(repository);
+          return result;
+        }
+      }
+    }
+
+    LocalArtifactResult result = delegate.find(session, request);
+    if (result.isAvailable()) {
+      RemoteRepository repository = result.getRepository();
+      addToIndex(path, repository == null ? "" : repository.getId());
+    }
+    return result;
+  }
+
+  @Override
+  public void add(RepositorySystemSession session, LocalArtifactRegistration request) {
+    delegate.add(session, request);
+
+    Artifact artifact = request.getArtifact();
+    if (!artifact.isSnapshot()) {
+      RemoteRepository repository = request.getRepository();
+      addToIndex(getPathForLocalArtifact(artifact), repository == null ? "" : repository.getId());
+    }
+  }
+
+  @Override
+  public LocalMetadataResult find(RepositorySystemSession session, LocalMetadataRequest request) {
+    return delegate.find(session, request);
+  }
+
+  @Override
+  public void add(RepositorySystemSession session, LocalMetadataRegistration request) {
+    delegate.add(session, request);
+  }
+
+  /**
+   * Forgets which indexed files were checked in a session, so that the next
+   * lookups check them again.
+   *
+   * @param session
+   *          the session
+   */
+  public static void forgetChecks(RepositorySystemSession session) {
+    session.getData().set(CHECKED_KEY, null);
+  }
+
+  @Override
+  public String toString() {
+    return delegate.toString();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Set<String> getChecked(RepositorySystemSession session) {
+    Set<String> checked = (Set<String>) session.getData().get(CHECKED_KEY);
+    if (checked == null) {
+      session.getData().set(CHECKED_KEY, null,
+          Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+      checked = (Set<String>) session.getData().get(CHECKED_KEY);
+    }
+    return checked;
+  }
+
+  private void addToIndex(String path, String repositoryId) {
+    try {
+      index.put(path, repositoryId, new File(getRepository().getBasedir(), path).length());
+    } catch (IOException ioe) {
+      log.warn("Cannot update the index of the local repository: {}", ioe.getMessage());
+    }
+  }
+
+  private void removeFromIndex(String path) {
+    try {
+      index.remove(path);
+    } catch (IOException ioe) {
+      log.warn("Cannot update the index of the local repository: {}", ioe.getMessage());
+    }
+  }
+
+  private static RemoteRepository findRepository(String repositoryId, List<RemoteRepository> repositories) {
+    for (RemoteRepository repository : repositories) {
+      if (repository.getId().equals(repositoryId)) {
+        return repository;
+      }
+    }
+    return null;
+  }
+}
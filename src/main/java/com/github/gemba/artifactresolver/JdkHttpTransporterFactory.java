@@ -0,0 +1,290 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.aether.ConfigurationProperties;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.AuthenticationContext;
+import org.eclipse.aether.repository.Proxy;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.transport.AbstractTransporter;
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.PeekTask;
+import org.eclipse.aether.spi.connector.transport.PutTask;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.transfer.NoTransporterException;
+import org.eclipse.aether.util.ConfigUtils;
+
+/**
+ * Creates transporters on the HTTP client of the JDK. All transporters share
+ * one client per proxy: the requests of concurrent downloads from an https
+ * repository are multiplexed over a single HTTP/2 connection where the server
+ * supports it, HTTP/1.1 connections are pooled. The client does its I/O on
+ * its own selector thread, so the number of concurrent downloads is not
+ * bound to connections. Plain http repositories are asked with HTTP/1.1, as
+ * an upgrade to HTTP/2 costs a round trip and is rarely supported.
+ * <p>
+ * Supports basic authentication of repositories and proxies without
+ * authentication. Checksums sent by the server in
+ * <code>X-Checksum-*</code> headers or a Nexus <code>ETag</code> spare the
+ * requests of the checksum files.
+ *
+ * @author Gemba
+ */
+public class JdkHttpTransporterFactory implements TransporterFactory {
+
+  private static final float PRIORITY = 5.0f;
+
+  // proxy and connect timeout -> client
+  private final ConcurrentMap<String, HttpClient> clients = new ConcurrentHashMap<String, HttpClient>();
+
+  @Override
+  public float getPriority() {
+    return PRIORITY;
+  }
+
+  @Override
+  public Transporter newInstance(RepositorySystemSession session, RemoteRepository repository)
+      throws NoTransporterException {
+    if (!"http".equalsIgnoreCase(repository.getProtocol()) && !"https".equalsIgnoreCase(repository.getProtocol())) {
+      throw new NoTransporterException(repository);
+    }
+
+    URI baseUri;
+    try {
+      String url = repository.getUrl();
+      baseUri = new URI(url.endsWith("/") ? url : url + "/").parseServerAuthority();
+    } catch (URISyntaxException use) {
+      throw new NoTransporterException(repository, use.getMessage(), use);
+    }
+
+    int connectTimeout = ConfigUtils.getInteger(session, ConfigurationProperties.DEFAULT_CONNECT_TIMEOUT,
+        ConfigurationProperties.CONNECT_TIMEOUT + "." + repository.getId(), ConfigurationProperties.CONNECT_TIMEOUT);
+    int requestTimeout = ConfigUtils.getInteger(session, ConfigurationProperties.DEFAULT_REQUEST_TIMEOUT,
+        ConfigurationProperties.REQUEST_TIMEOUT + "." + repository.getId(), ConfigurationProperties.REQUEST_TIMEOUT);
+    String userAgent = ConfigUtils.getString(session, ConfigurationProperties.DEFAULT_USER_AGENT,
+        ConfigurationProperties.USER_AGENT);
+
+    String authorization = null;
+    AuthenticationContext authContext = AuthenticationContext.forRepository(session, repository);
+    try {
+      if (authContext != null && authContext.get(AuthenticationContext.USERNAME) != null) {
+        String credentials = authContext.get(AuthenticationContext.USERNAME) + ":"
+            + String.valueOf(authContext.get(AuthenticationContext.PASSWORD));
+        authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+      }
+    } finally {
+      AuthenticationContext.close(authContext);
+    }
+
+    HttpClient client = getClient(repository.getProxy(), connectTimeout);
+    return new JdkHttpTransporter(client, baseUri, userAgent, authorization, requestTimeout);
+  }
+
+  private HttpClient getClient(Proxy proxy, int connectTimeout) {
+    String key = (proxy == null ? "" : proxy.getHost() + ":" + proxy.getPort()) + " " + connectTimeout;
+    HttpClient client = clients.get(key);
+    if (client == null) {
+      HttpClient.Builder builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2)
+          .followRedirects(HttpClient.Redirect.NORMAL);
+      if (connectTimeout > 0) {
+        builder.connectTimeout(Duration.ofMillis(connectTimeout));
+      }
+      if (proxy != null) {
+        builder.proxy(ProxySelector.of(InetSocketAddress.createUnresolved(proxy.getHost(), proxy.getPort())));
+      }
+      HttpClient newClient = builder.build();
+      client = clients.putIfAbsent(key, newClient);
+      if (client == null) {
+        client = newClient;
+      }
+    }
+    return client;
+  }
+
+  /**
+   * Transporter of one repository.
+   */
+  static class JdkHttpTransporter extends AbstractTransporter {
+
+    // checksum of Nexus, e.g. {SHA1{d40d68ba1f88d8e9b0040f175a6ff41928abd5e7}}
+    private static final Pattern NEXUS_ETAG = Pattern.compile("\\{SHA1\\{([0-9a-fA-F]+)\\}\\}");
+
+    private final HttpClient client;
+    private final URI baseUri;
+    private final HttpClient.Version version;
+    private final String userAgent;
+    private final String authorization;
+    private final int requestTimeout;
+
+    JdkHttpTransporter(HttpClient client, URI baseUri, String userAgent, String authorization, int requestTimeout) {
+      this.client = client;
+      this.baseUri = baseUri;
+      this.version = "https".equalsIgnoreCase(baseUri.getScheme()) ? HttpClient.Version.HTTP_2
+          : HttpClient.Version.HTTP_1_1;
+      this.userAgent = userAgent;
+      this.authorization = authorization;
+      this.requestTimeout = requestTimeout;
+    }
+
+    @Override
+    public int classify(Throwable error) {
+      if (error instanceof HttpStatusException && ((HttpStatusException) error).getStatusCode() == 404) {
+        return ERROR_NOT_FOUND;
+      }
+      return ERROR_OTHER;
+    }
+
+    @Override
+    protected void implPeek(PeekTask task) throws Exception {
+      HttpRequest request = newRequest(task.getLocation()).method("HEAD", BodyPublishers.noBody()).build();
+      HttpResponse<Void> response = client.send(request, BodyHandlers.discarding());
+      checkStatus(request, response);
+    }
+
+    /**
+     * Asks the size of a resource with a HEAD request, without waiting for
+     * the response.
+     *
+     * @param location
+     *          the location relative to the repository
+     * @return the length of the resource, -1 if unknown or missing
+     */
+    CompletableFuture<Long> getContentLength(URI location) {
+      HttpRequest request = newRequest(location).method("HEAD", BodyPublishers.noBody()).build();
+      return client.sendAsync(request, BodyHandlers.discarding()).thenApply(response -> response.statusCode() < 300
+          ? response.headers().firstValueAsLong("Content-Length").orElse(-1L) : -1L);
+    }
+
+    @Override
+    protected void implGet(GetTask task) throws Exception {
+      boolean resume = task.getDataFile() != null && task.getResumeOffset() > 0;
+      HttpRequest request = newGetRequest(task, resume);
+      HttpResponse<InputStream> response = client.send(request, BodyHandlers.ofInputStream());
+      if (resume && (response.statusCode() == 412 || response.statusCode() == 416)) {
+        // the partial file is outdated
+        IOUtils.closeQuietly(response.body());
+        resume = false;
+        request = newGetRequest(task, false);
+        response = client.send(request, BodyHandlers.ofInputStream());
+      }
+
+      InputStream body = response.body();
+      try {
+        checkStatus(request, response);
+        extractChecksums(response.headers(), task);
+        long length = response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+        utilGet(task, body, true, length, resume && response.statusCode() == 206);
+      } finally {
+        IOUtils.closeQuietly(body);
+      }
+    }
+
+    @Override
+    protected void implPut(final PutTask task) throws Exception {
+      task.getListener().transportStarted(0, task.getDataLength());
+      HttpRequest request = newRequest(task.getLocation()).PUT(BodyPublishers.ofInputStream(() -> {
+        try {
+          return task.newInputStream();
+        } catch (IOException ioe) {
+          throw new UncheckedIOException(ioe);
+        }
+      })).build();
+      HttpResponse<Void> response = client.send(request, BodyHandlers.discarding());
+      checkStatus(request, response);
+    }
+
+    @Override
+    protected void implClose() {
+      // the client is shared by all transporters
+    }
+
+    @Override
+    public String toString() {
+      return "JdkHttpTransporter(" + baseUri + ")";
+    }
+
+    private HttpRequest newGetRequest(GetTask task, boolean resume) {
+      HttpRequest.Builder builder = newRequest(task.getLocation()).GET();
+      if (resume) {
+        File dataFile = task.getDataFile();
+        builder.header("Range", "bytes=" + task.getResumeOffset() + "-");
+        // the part is outdated if the resource changed after it was written
+        builder.header("If-Unmodified-Since", DateTimeFormatter.RFC_1123_DATE_TIME
+            .format(Instant.ofEpochMilli(dataFile.lastModified() - 60000L).atZone(ZoneOffset.UTC)));
+        builder.header("Accept-Encoding", "identity");
+      }
+      return builder.build();
+    }
+
+    private HttpRequest.Builder newRequest(URI location) {
+      HttpRequest.Builder builder = HttpRequest.newBuilder(baseUri.resolve(location)).version(version)
+          .header("User-Agent", userAgent);
+      if (authorization != null) {
+        builder.header("Authorization", authorization);
+      }
+      if (requestTimeout > 0) {
+        builder.timeout(Duration.ofMillis(requestTimeout));
+      }
+      return builder;
+    }
+
+    private static void checkStatus(HttpRequest request, HttpResponse<?> response) throws HttpStatusException {
+      int status = response.statusCode();
+      if (status >= 300) {
+        throw new HttpStatusException(status, request.method() + " " + request.uri() + " returned " + status);
+      }
+    }
+
+    private static void extractChecksums(HttpHeaders headers, GetTask task) {
+      String sha1 = headers.firstValue("X-Checksum-Sha1").orElse(null);
+      if (sha1 == null) {
+        Matcher matcher = NEXUS_ETAG.matcher(headers.firstValue("ETag").orElse(""));
+        if (matcher.find()) {
+          sha1 = matcher.group(1);
+        }
+      }
+      if (sha1 != null) {
+        task.setChecksum("SHA-1", sha1.toLowerCase(Locale.ENGLISH));
+      }
+      String md5 = headers.firstValue("X-Checksum-Md5").orElse(null);
+      if (md5 != null) {
+        task.setChecksum("MD5", md5.toLowerCase(Locale.ENGLISH));
+      }
+    }
+  }
+}
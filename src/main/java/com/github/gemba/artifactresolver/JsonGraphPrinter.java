@@ -0,0 +1,57 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import org.json.simple.JSONValue;
+
+/**
+ * Renders the dependencies of an artifact as one line of JSON. Each node is an
+ * object with the artifact, its scope, whether it is optional and its
+ * children, like the roots of a lock file.
+ *
+ * @author Gemba
+ */
+public class JsonGraphPrinter implements DependencyGraph.Visitor {
+
+  // rendered tree
+  private final StringBuilder tree = new StringBuilder(1024);
+
+  // true while the next node is the first child of its parent
+  private boolean firstChild = true;
+
+  @Override
+  public boolean visitEnter(DependencyGraph graph, int node) {
+    if (!firstChild) {
+      tree.append(',');
+    }
+    tree.append("{\"artifact\":\"").append(JSONValue.escape(graph.getCoordinates(node))).append('"');
+    String scope = graph.getScope(node);
+    if (scope != null) {
+      tree.append(",\"scope\":\"").append(JSONValue.escape(scope)).append('"');
+      tree.append(",\"optional\":").append(graph.isOptional(node));
+    }
+    tree.append(",\"children\":[");
+    firstChild = true;
+    return true;
+  }
+
+  @Override
+  public boolean visitLeave(DependencyGraph graph, int node) {
+    tree.append("]}");
+    firstChild = false;
+    return true;
+  }
+
+  /**
+   * @return the tree of all nodes visited so far
+   */
+  @Override
+  public String toString() {
+    return tree.toString();
+  }
+}
@@ -0,0 +1,126 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Reads the artifacts of a JSON dependency file (see dependencies.json). The
+ * file is parsed as a stream which pauses after each artifact.
+ *
+ * @author Gemba
+ */
+public class JsonManifestReader extends ManifestReader {
+
+  private final JSONParser parser = new JSONParser();
+  private final ArtifactHandler handler = new ArtifactHandler();
+  private boolean started;
+
+  /**
+   * @param reader
+   *          the reader of the JSON array
+   */
+  public JsonManifestReader(Reader reader) {
+    super(reader);
+  }
+
+  @Override
+  protected DefaultArtifact readNext() throws IOException {
+    if (handler.finished) {
+      return null;
+    }
+    handler.artifact = null;
+    try {
+      parser.parse(getReader(), handler, started);
+    } catch (ParseException pe) {
+      throw new IOException("Invalid JSON at position " + pe.getPosition(), pe);
+    }
+    started = true;
+    return handler.artifact;
+  }
+
+  /**
+   * Builds an artifact of each object in the array and pauses the parser.
+   */
+  private static class ArtifactHandler implements ContentHandler {
+
+    private final Map<String, String> fields = new HashMap<String, String>();
+    private String key;
+    private int depth;
+
+    private DefaultArtifact artifact;
+    private boolean finished;
+
+    @Override
+    public void startJSON() {
+    }
+
+    @Override
+    public void endJSON() {
+      finished = true;
+    }
+
+    @Override
+    public boolean startObject() {
+      depth++;
+      if (depth == 1) {
+        fields.clear();
+      }
+      return true;
+    }
+
+    @Override
+    public boolean endObject() {
+      depth--;
+      if (depth > 0) {
+        return true;
+      }
+      artifact = new DefaultArtifact(fields.get("groupId"), fields.get("artifactId"), fields.get("classifier"),
+          fields.get("extension"), fields.get("version"));
+      return false;
+    }
+
+    @Override
+    public boolean startObjectEntry(String name) {
+      key = name;
+      return true;
+    }
+
+    @Override
+    public boolean endObjectEntry() {
+      key = null;
+      return true;
+    }
+
+    @Override
+    public boolean startArray() {
+      return true;
+    }
+
+    @Override
+    public boolean endArray() {
+      return true;
+    }
+
+    @Override
+    public boolean primitive(Object value) {
+      if (depth == 1 && key != null && value != null) {
+        fields.put(key, value.toString());
+      }
+      return true;
+    }
+  }
+}
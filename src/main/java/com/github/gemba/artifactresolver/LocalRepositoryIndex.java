@@ -0,0 +1,228 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the artifacts present in the download directory. It answers
+ * whether an artifact is present without looking at the file system.
+ * <p>
+ * The index is a journal of tab separated lines: path relative to the
+ * download directory, id of the repository the artifact came from (empty for
+ * locally installed artifacts) and size. New artifacts are appended as they
+ * are downloaded, removed artifacts with a size of -1; the journal is
+ * compacted when it is loaded.
+ *
+ * @author Gemba
+ */
+public class LocalRepositoryIndex {
+
+  /**
+   * Path of the index relative to the download directory.
+   */
+  public static final String INDEX_FILE = ".mvn-dd/index";
+
+  private static final Logger log = LoggerFactory.getLogger(LocalRepositoryIndex.class);
+
+  private static final String ENCODING = "UTF-8";
+
+  private final File file;
+
+  // path -> entry
+  private final Map<String, IndexEntry> entries = new ConcurrentHashMap<String, IndexEntry>();
+
+  /**
+   * Loads the index of a download directory.
+   *
+   * @param baseDir
+   *          the download directory
+   * @throws IOException
+   *           if the index is not readable
+   */
+  public LocalRepositoryIndex(File baseDir) throws IOException {
+    file = new File(baseDir, INDEX_FILE);
+
+    int lines = 0;
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        String[] fields = line.split("\t");
+        if (fields.length == 3) {
+          long size = Long.parseLong(fields[2]);
+          if (size < 0) {
+            entries.remove(fields[0]);
+          } else {
+            entries.put(fields[0], new IndexEntry(fields[1].intern(), size));
+          }
+          lines++;
+        }
+      }
+    } catch (FileNotFoundException fnfe) {
+      log.debug("Starting a new index. File not found: {}.", file);
+      return;
+    } finally {
+      IOUtils.closeQuietly(reader);
+    }
+    log.debug("Loaded {} artifacts from {}", entries.size(), file);
+
+    if (lines > entries.size()) {
+      compact();
+    }
+  }
+
+  /**
+   * @param path
+   *          the path relative to the download directory
+   * @return the entry of the path or <code>null</code> if the path is not
+   *         indexed
+   */
+  public IndexEntry get(String path) {
+    return entries.get(path);
+  }
+
+  /**
+   * Adds a downloaded artifact to the index and appends it to the journal.
+   *
+   * @param path
+   *          the path relative to the download directory
+   * @param repositoryId
+   *          the id of the repository the artifact came from, empty for a
+   *          locally installed artifact
+   * @param size
+   *          the size of the artifact
+   * @throws IOException
+   *           if the journal is not writable
+   */
+  public void put(String path, String repositoryId, long size) throws IOException {
+    IndexEntry entry = new IndexEntry(repositoryId, size);
+    IndexEntry previous = entries.put(path, entry);
+    if (entry.equals(previous)) {
+      return;
+    }
+
+    append(path, entry);
+  }
+
+  /**
+   * Removes an artifact no longer present from the index and appends the
+   * removal to the journal.
+   *
+   * @param path
+   *          the path relative to the download directory
+   * @throws IOException
+   *           if the journal is not writable
+   */
+  public void remove(String path) throws IOException {
+    if (entries.remove(path) != null) {
+      append(path, new IndexEntry("", -1));
+    }
+  }
+
+  /**
+   * @return the number of indexed artifacts
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Rewrites the journal with one line per artifact.
+   */
+  private synchronized void compact() throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    Writer writer = null;
+    try {
+      writer = new OutputStreamWriter(new FileOutputStream(tmp), ENCODING);
+      for (Entry<String, IndexEntry> entry : entries.entrySet()) {
+        writeEntry(writer, entry.getKey(), entry.getValue());
+      }
+    } finally {
+      IOUtils.closeQuietly(writer);
+    }
+
+    FileUtils.deleteQuietly(file);
+    FileUtils.moveFile(tmp, file);
+    log.debug("Compacted {}", file);
+  }
+
+  private synchronized void append(String path, IndexEntry entry) throws IOException {
+    FileUtils.forceMkdir(file.getParentFile());
+    Writer writer = null;
+    try {
+      writer = new OutputStreamWriter(new FileOutputStream(file, true), ENCODING);
+      writeEntry(writer, path, entry);
+    } finally {
+      IOUtils.closeQuietly(writer);
+    }
+  }
+
+  private static void writeEntry(Writer writer, String path, IndexEntry entry) throws IOException {
+    writer.write(path + "\t" + entry.getRepositoryId() + "\t" + entry.getSize() + "\n");
+  }
+
+  /**
+   * An indexed artifact.
+   */
+  public static class IndexEntry {
+
+    private final String repositoryId;
+    private final long size;
+
+    IndexEntry(String repositoryId, long size) {
+      this.repositoryId = repositoryId;
+      this.size = size;
+    }
+
+    /**
+     * @return the id of the repository the artifact came from, empty for a
+     *         locally installed artifact
+     */
+    public String getRepositoryId() {
+      return repositoryId;
+    }
+
+    /**
+     * @return the size of the artifact
+     */
+    public long getSize() {
+      return size;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof IndexEntry)) {
+        return false;
+      }
+      IndexEntry other = (IndexEntry) obj;
+      return repositoryId.equals(other.repositoryId) && size == other.size;
+    }
+
+    @Override
+    public int hashCode() {
+      return repositoryId.hashCode() * 31 + (int) size;
+    }
+  }
+}
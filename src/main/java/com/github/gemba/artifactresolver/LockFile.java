@@ -0,0 +1,338 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The dependency graphs and resolved artifacts of a run, stored as JSON. A
+ * lock file allows to download the same artifacts again without collecting
+ * the dependency graphs. The artifacts are recorded as a listener of the
+ * repository events, the dependency graphs are kept in a
+ * {@link DependencyGraph} until the lock file is written.
+ * <p>
+ * The key of a lock file identifies the artifacts to resolve, the
+ * repositories, the requested attachments, whether the dependency graphs
+ * were merged and the manifest of a delta export; a lock file only applies to
+ * a run with the same key. Artifacts left out by a delta export are not
+ * resolved and thus not recorded.
+ *
+ * @author Gemba
+ */
+public class LockFile extends AbstractRepositoryListener {
+
+  private static final Logger log = LoggerFactory.getLogger(LockFile.class);
+
+  private static final String KEY = "key";
+  private static final String ROOTS = "roots";
+  private static final String ARTIFACTS = "artifacts";
+  private static final String ARTIFACT = "artifact";
+  private static final String SCOPE = "scope";
+  private static final String OPTIONAL = "optional";
+  private static final String CHILDREN = "children";
+  private static final String SHA1 = "sha1";
+  private static final String SIZE = "size";
+
+  private final String key;
+
+  private final DependencyGraph graph = new DependencyGraph();
+
+  // artifact coordinates -> root node in graph
+  private final Map<String, Integer> roots = new TreeMap<String, Integer>();
+
+  // artifact coordinates -> serialized artifact with checksum
+  private final Map<String, JSONObject> artifacts = new TreeMap<String, JSONObject>();
+
+  /**
+   * Creates an empty lock file.
+   *
+   * @param key
+   *          the key of the run
+   */
+  public LockFile(String key) {
+    this.key = key;
+  }
+
+  /**
+   * Computes the key of a run.
+   *
+   * @param rootArtifacts
+   *          the artifacts to resolve
+   * @param repositories
+   *          the repositories to query
+   * @param javadoc
+   *          <code>true</code> if javadoc attachments are retrieved
+   * @param sources
+   *          <code>true</code> if sources attachments are retrieved
+   * @param merge
+   *          <code>true</code> if the artifacts are collected as one
+   *          dependency graph, which mediates versions across all of them
+   * @param deltaSha1
+   *          the SHA-1 checksum of the manifest of the previous export,
+   *          <code>null</code> without delta export
+   * @return the key
+   */
+  public static String computeKey(Collection<? extends Artifact> rootArtifacts, List<RemoteRepository> repositories,
+      boolean javadoc, boolean sources, boolean merge, String deltaSha1) {
+    StringBuilder text = new StringBuilder();
+    for (Artifact artifact : rootArtifacts) {
+      text.append(artifact).append('\n');
+    }
+    for (RemoteRepository repository : repositories) {
+      text.append(repository.getId()).append('=').append(repository.getUrl()).append('\n');
+    }
+    text.append("javadoc=").append(javadoc).append('\n');
+    text.append("sources=").append(sources).append('\n');
+    text.append("merge=").append(merge).append('\n');
+    if (deltaSha1 != null) {
+      text.append("delta=").append(deltaSha1).append('\n');
+    }
+    return Checksums.sha1(text.toString());
+  }
+
+  /**
+   * Reads a lock file.
+   *
+   * @param file
+   *          the file to read
+   * @return the lock file
+   * @throws IOException
+   *           if the file is not readable
+   * @throws ParseException
+   *           if the file is no valid JSON
+   */
+  public static LockFile read(File file) throws IOException, ParseException {
+    JSONObject json;
+    Reader reader = null;
+    try {
+      reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+      json = (JSONObject) new JSONParser().parse(reader);
+    } finally {
+      IOUtils.closeQuietly(reader);
+    }
+
+    LockFile lockFile = new LockFile((String) json.get(KEY));
+    for (Object root : (JSONArray) json.get(ROOTS)) {
+      JSONObject node = (JSONObject) root;
+      lockFile.roots.put((String) node.get(ARTIFACT), Integer.valueOf(lockFile.toNode(node)));
+    }
+    for (Object obj : (JSONArray) json.get(ARTIFACTS)) {
+      JSONObject artifact = (JSONObject) obj;
+      lockFile.artifacts.put((String) artifact.get(ARTIFACT), artifact);
+    }
+    return lockFile;
+  }
+
+  /**
+   * @return the key of the run
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * Records the dependency graph of a resolved artifact.
+   *
+   * @param nodes
+   *          the graph of the node, best {@link #getGraph()} to avoid a copy
+   * @param node
+   *          the node of the resolved artifact
+   */
+  public void addRoot(DependencyGraph nodes, int node) {
+    int root = graph.add(nodes, node);
+    synchronized (this) {
+      roots.put(graph.getCoordinates(root), Integer.valueOf(root));
+    }
+  }
+
+  /**
+   * Records a resolved artifact with its checksum. This includes the POMs and
+   * parent POMs read while collecting the dependency graphs. An artifact
+   * resolved again, e.g. by the tree of another root, is hashed only once.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public void artifactResolved(RepositoryEvent event) {
+    Artifact artifact = event.getArtifact();
+    if (event.getException() != null || artifact.getFile() == null) {
+      return;
+    }
+    String coords = artifact.toString();
+    synchronized (this) {
+      if (artifacts.containsKey(coords)) {
+        return;
+      }
+    }
+
+    JSONObject json = new JSONObject();
+    json.put(ARTIFACT, coords);
+    try {
+      json.put(SHA1, Checksums.sha1(artifact.getFile()));
+    } catch (IOException ioe) {
+      log.error("Cannot record {} in the lock file: {}", artifact, ioe.getMessage());
+      return;
+    }
+    json.put(SIZE, artifact.getFile().length());
+    synchronized (this) {
+      artifacts.put(coords, json);
+    }
+  }
+
+  /**
+   * @return the graph holding the recorded dependency graphs
+   */
+  public DependencyGraph getGraph() {
+    return graph;
+  }
+
+  /**
+   * @return the root nodes of the recorded dependency graphs in
+   *         {@link #getGraph()}
+   */
+  public synchronized int[] getRoots() {
+    int[] nodes = new int[roots.size()];
+    int i = 0;
+    for (Integer node : roots.values()) {
+      nodes[i++] = node.intValue();
+    }
+    return nodes;
+  }
+
+  /**
+   * @return the recorded artifacts
+   */
+  public synchronized List<Artifact> getArtifacts() {
+    List<Artifact> list = new ArrayList<Artifact>();
+    for (String coords : artifacts.keySet()) {
+      list.add(new DefaultArtifact(coords));
+    }
+    return list;
+  }
+
+  /**
+   * @param artifact
+   *          a recorded artifact
+   * @return the SHA-1 checksum of the artifact or <code>null</code> if the
+   *         artifact is not recorded
+   */
+  public synchronized String getSha1(Artifact artifact) {
+    JSONObject json = artifacts.get(artifact.toString());
+    return json == null ? null : (String) json.get(SHA1);
+  }
+
+  /**
+   * @param artifact
+   *          a recorded artifact
+   * @return the size of the artifact in bytes or -1 if the artifact is not
+   *         recorded
+   */
+  public synchronized long getSize(Artifact artifact) {
+    JSONObject json = artifacts.get(artifact.toString());
+    Number size = json == null ? null : (Number) json.get(SIZE);
+    return size == null ? -1 : size.longValue();
+  }
+
+  /**
+   * Writes the lock file. Each root and artifact is written on its own line.
+   *
+   * @param file
+   *          the file to write
+   * @throws IOException
+   *           if the file is not writable
+   */
+  public synchronized void write(File file) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    Writer writer = null;
+    try {
+      writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+      writer.write("{\n\"" + KEY + "\": " + JSONValue.toJSONString(key) + ",\n");
+      writer.write("\"" + ROOTS + "\": [");
+      List<JSONObject> rootValues = new ArrayList<JSONObject>(roots.size());
+      for (Integer root : roots.values()) {
+        rootValues.add(toJson(root.intValue()));
+      }
+      writeLines(writer, rootValues);
+      writer.write("],\n\"" + ARTIFACTS + "\": [");
+      writeLines(writer, artifacts.values());
+      writer.write("]\n}\n");
+    } finally {
+      IOUtils.closeQuietly(writer);
+    }
+
+    FileUtils.deleteQuietly(file);
+    FileUtils.moveFile(tmp, file);
+  }
+
+  private static void writeLines(Writer writer, Collection<JSONObject> values) throws IOException {
+    Iterator<JSONObject> iterator = values.iterator();
+    while (iterator.hasNext()) {
+      writer.write("\n  " + iterator.next().toJSONString());
+      if (iterator.hasNext()) {
+        writer.write(',');
+      }
+    }
+    writer.write('\n');
+  }
+
+  @SuppressWarnings("unchecked")
+  private JSONObject toJson(int node) {
+    JSONObject json = new JSONObject();
+    json.put(ARTIFACT, graph.getCoordinates(node));
+    String scope = graph.getScope(node);
+    if (scope != null) {
+      json.put(SCOPE, scope);
+      json.put(OPTIONAL, graph.isOptional(node));
+    }
+    JSONArray children = new JSONArray();
+    int count = graph.getChildCount(node);
+    for (int i = 0; i < count; i++) {
+      children.add(toJson(graph.getChild(node, i)));
+    }
+    json.put(CHILDREN, children);
+    return json;
+  }
+
+  private int toNode(JSONObject json) {
+    JSONArray jsonChildren = (JSONArray) json.get(CHILDREN);
+    int[] children = new int[jsonChildren.size()];
+    for (int i = 0; i < children.length; i++) {
+      children[i] = toNode((JSONObject) jsonChildren.get(i));
+    }
+    Boolean optional = (Boolean) json.get(OPTIONAL);
+    return graph.add((String) json.get(ARTIFACT), (String) json.get(SCOPE), Boolean.TRUE.equals(optional), children,
+        children.length);
+  }
+}
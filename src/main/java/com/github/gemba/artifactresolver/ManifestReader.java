@@ -0,0 +1,91 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.eclipse.aether.artifact.DefaultArtifact;
+
+/**
+ * Reads the artifacts to resolve one at a time, so that the resolution can
+ * start before the whole manifest is read. A reader can be iterated once.
+ *
+ * @author Gemba
+ */
+public abstract class ManifestReader implements Iterable<DefaultArtifact>, Iterator<DefaultArtifact>, Closeable {
+
+  private final Reader reader;
+
+  private DefaultArtifact next;
+  private boolean nextRead;
+
+  /**
+   * @param reader
+   *          the reader of the manifest
+   */
+  protected ManifestReader(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * @return the reader of the manifest
+   */
+  protected Reader getReader() {
+    return reader;
+  }
+
+  /**
+   * Reads the next artifact.
+   *
+   * @return the artifact or <code>null</code> at the end of the manifest
+   * @throws IOException
+   *           if the manifest is not readable or invalid
+   */
+  protected abstract DefaultArtifact readNext() throws IOException;
+
+  @Override
+  public Iterator<DefaultArtifact> iterator() {
+    return this;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (!nextRead) {
+      try {
+        next = readNext();
+      } catch (IOException ioe) {
+        throw new IllegalStateException("Cannot read the manifest: " + ioe.getMessage(), ioe);
+      }
+      nextRead = true;
+    }
+    return next != null;
+  }
+
+  @Override
+  public DefaultArtifact next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    nextRead = false;
+    return next;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -7,12 +7,20 @@ package com.github.gemba.artifactresolver;
  * which accompanies this distribution (see COPYING), and is available at
  *   http://www.eclipse.org/legal/epl-v10.html
  *******************************************************************************/
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -21,7 +29,9 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -41,6 +51,9 @@ public class MavenDependencyDownloader {
   private static final String DEFAULT_LOCAL_DOWNLOAD_REPO = "local-repo";
   private static final String DEFAULT_DEPENDENCY_FILE = "dependencies.json";
   private static final String EXTRA_REPO_FILE = "extra-repos.json";
+  private static final String NOT_FOUND_CACHE_FILE = ".mvn-dd/not-found.properties";
+  private static final String ROUTES_FILE = ".mvn-dd/routes.properties";
+  private static final int DEFAULT_NOT_FOUND_TTL = 24;
 
   private static final Logger log = LoggerFactory.getLogger(MavenDependencyDownloader.class);
 
@@ -48,11 +61,35 @@ public class MavenDependencyDownloader {
 
   private static boolean javadoc = false;
   private static boolean sources = false;
+  private static int threads = 1;
+  private static int prefetchThreads = 0;
+  private static int retries = RetryingTransporterFactory.DEFAULT_RETRIES;
+  private static HttpTransport httpClient = HttpTransport.APACHE;
+  private static int repositoryConnections = DownloadScheduler.DEFAULT_CONNECTIONS;
+  private static String updatePolicy;
+  private static boolean merge = false;
+  private static boolean refresh = false;
+  private static int notFoundTtl = DEFAULT_NOT_FOUND_TTL;
+  private static boolean rebuildIndex = false;
+  private static String writeLock;
+  private static String report;
+  private static TreeFormat treeFormat = TreeFormat.TEXT;
+  private static String treeFile;
+  private static boolean quietTree;
+  private static String export;
+  private static String delta;
+  private static String store;
+  private static int daemonPort;
+  private static int clientPort;
+  private static String useLock;
   private static String dependencyFile;
+  private static String coordinateFile;
   private static String localRepo;
   private static ArrayList<DefaultArtifact> artifacts;
   private static DependencyResolver dependencyResolver;
+  private static DownloadScheduler downloadScheduler;
   private static Map<String, String> extraRepos = new HashMap<String, String>();
+  private static Map<String, String> routingRules = new HashMap<String, String>();
 
   /**
    * Default constructor.
@@ -67,34 +104,205 @@ public class MavenDependencyDownloader {
 
     parseCommandLine(args);
 
+    if (clientPort > 0) {
+      System.exit(requestDaemon() ? 0 : 1);
+    }
+
     readExtraRepos();
 
-    RepositorySystemHelper repoSystemHelper = new RepositorySystemHelper(localRepo, extraRepos);
+    if (rebuildIndex) {
+      FileUtils.deleteQuietly(new File(localRepo, LocalRepositoryIndex.INDEX_FILE));
+    }
+
+    RepositorySystemHelper repoSystemHelper = new RepositorySystemHelper(localRepo, extraRepos, updatePolicy);
+    repoSystemHelper.setRetries(retries);
+    repoSystemHelper.setHttpTransport(httpClient);
+    downloadScheduler = new DownloadScheduler(repositoryConnections);
+    repoSystemHelper.setDownloadScheduler(downloadScheduler);
+    ArtifactStore artifactStore = null;
+    if (store != null) {
+      artifactStore = new ArtifactStore(new File(store));
+      repoSystemHelper.setArtifactStore(artifactStore);
+    }
     dependencyResolver = new DependencyResolver(repoSystemHelper);
 
+    if (daemonPort > 0) {
+      NotFoundCache notFoundCache = newNotFoundCache();
+      repoSystemHelper.setRepositoryRouter(newRepositoryRouter(repoSystemHelper));
+      new ResolverDaemon(repoSystemHelper, notFoundCache, repoSystemHelper.getRepositoryRouter()).serve(daemonPort);
+      return;
+    }
+
+    Iterable<DefaultArtifact> roots = artifacts;
+    ManifestReader manifestReader = null;
     if (artifacts.isEmpty()) {
-      JSONParser jsonParser = new JSONParser();
-      FileReader fileReader = new FileReader(new File(dependencyFile));
-      JSONArray jsonArray = (JSONArray) jsonParser.parse(fileReader);
-      fileReader.close();
+      manifestReader = openManifest();
+      roots = manifestReader;
+    }
 
-      for (Object obj : jsonArray) {
-        JSONObject jsonObj = (JSONObject) obj;
-        String groupId = (String) jsonObj.get("groupId");
-        String artifactId = (String) jsonObj.get("artifactId");
-        String classifier = (String) jsonObj.get("classifier");
-        String extension = (String) jsonObj.get("extension");
-        String version = (String) jsonObj.get("version");
+    try {
+      if (manifestReader != null && (merge || writeLock != null || useLock != null)) {
+        // these modes need all artifacts up front
+        for (DefaultArtifact artifact : roots) {
+          artifacts.add(artifact);
+        }
+        roots = artifacts;
+      }
+      download(repoSystemHelper, roots);
+    } finally {
+      IOUtils.closeQuietly(manifestReader);
+    }
+    if (artifactStore != null) {
+      log.info("Linked {} artifacts from the store \"{}\", added {}.", artifactStore.getLinked(), store,
+          artifactStore.getStored());
+    }
+    log.info("... artifacts downloaded to \"{}\". Finished. Thank you.", localRepo);
+  }
+
+  /**
+   * Resolves the artifacts in the requested mode.
+   * 
+   * @param repoSystemHelper
+   *          the helper used by the resolver
+   * @param roots
+   *          the artifacts to resolve
+   * @throws Exception
+   */
+  private static void download(RepositorySystemHelper repoSystemHelper, Iterable<DefaultArtifact> roots)
+      throws Exception {
+    NotFoundCache notFoundCache = newNotFoundCache();
+    dependencyResolver.setNotFoundCache(notFoundCache);
+
+    RepositoryRouter router = newRepositoryRouter(repoSystemHelper);
+    repoSystemHelper.setRepositoryRouter(router);
+
+    ResolutionSummary summary = new ResolutionSummary();
+    dependencyResolver.setSummary(summary);
+
+    RunReport runReport = null;
+    if (report != null) {
+      runReport = new RunReport(repoSystemHelper.getRepositories());
+      runReport.setSummary(summary);
+      dependencyResolver.setRunReport(runReport);
+      repoSystemHelper.addRepositoryListener(runReport);
+      repoSystemHelper.addTransferListener(runReport);
+    }
+
+    ExportManifest previousExport = null;
+    if (delta != null) {
+      previousExport = ExportManifest.read(new File(delta));
+      dependencyResolver.setPreviousExport(previousExport);
+    }
+
+    ArtifactPrefetcher prefetcher = null;
+    if (prefetchThreads > 0) {
+      prefetcher = new ArtifactPrefetcher(prefetchThreads);
+      prefetcher.setNotFoundCache(notFoundCache);
+      prefetcher.setPreviousExport(previousExport);
+      repoSystemHelper.setArtifactPrefetcher(prefetcher);
+    }
+
+    ArchiveExporter exporter = null;
+    if (export != null) {
+      exporter = new ArchiveExporter(new File(export), new File(localRepo), previousExport);
+      repoSystemHelper.addRepositoryListener(exporter);
+    }
 
-        DefaultArtifact artifact = new DefaultArtifact(groupId, artifactId, classifier, extension, version);
-        dependencyResolver.downloadDependencyTree(artifact, javadoc, sources);
+    LockFile lockFile = null;
+    LockFile lockedArtifacts = null;
+    if (writeLock != null || useLock != null) {
+      String deltaSha1 = delta == null ? null : Checksums.sha1(new File(delta));
+      String lockKey = LockFile.computeKey(artifacts, repoSystemHelper.getRepositories(), javadoc, sources,
+          merge, deltaSha1);
+      if (writeLock != null) {
+        lockFile = new LockFile(lockKey);
+        dependencyResolver.setLockFile(lockFile);
+        repoSystemHelper.addRepositoryListener(lockFile);
       }
-    } else {
-      for (DefaultArtifact artifact : artifacts) {
-        dependencyResolver.downloadDependencyTree(artifact, javadoc, sources);
+      lockedArtifacts = readLockFile(lockKey);
+      if (lockedArtifacts != null) {
+        for (Artifact artifact : lockedArtifacts.getArtifacts()) {
+          downloadScheduler.setSize(artifact, lockedArtifacts.getSize(artifact));
+        }
       }
     }
-    log.info("... artifacts downloaded to \"{}\". Finished. Thank you.", localRepo);
+
+    dependencyResolver.setQuietTree(quietTree);
+    Writer treeWriter = null;
+    if (treeFile != null && !quietTree) {
+      treeWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(treeFile), "UTF-8"));
+    }
+    dependencyResolver.setTreeOutput(treeFormat, treeWriter);
+
+    try {
+      if (lockedArtifacts != null) {
+        dependencyResolver.downloadLockedArtifacts(lockedArtifacts);
+      } else if (merge) {
+        dependencyResolver.downloadMergedDependencyTree(artifacts, javadoc, sources);
+      } else {
+        dependencyResolver.downloadDependencyTrees(roots, javadoc, sources, threads);
+      }
+      if (lockFile != null) {
+        lockFile.write(new File(writeLock));
+        log.info("Lock file written to \"{}\".", writeLock);
+      }
+      if (exporter != null) {
+        exporter.close();
+        exporter = null;
+      }
+    } finally {
+      // keeps the archive of a failed run readable
+      IOUtils.closeQuietly(exporter);
+      if (prefetcher != null) {
+        prefetcher.shutdown();
+      }
+      downloadScheduler.shutdown();
+      if (treeWriter != null) {
+        IOUtils.closeQuietly(treeWriter);
+        log.info("Dependency trees written to \"{}\".", treeFile);
+      }
+      notFoundCache.save();
+      router.save();
+      summary.log();
+      if (runReport != null) {
+        try {
+          runReport.write(new File(report));
+          log.info("Run report written to \"{}\".", report);
+        } catch (IOException ioe) {
+          log.warn("Cannot write the run report: {}", ioe.getMessage());
+        }
+      }
+    }
+  }
+
+  private static NotFoundCache newNotFoundCache() throws IOException {
+    return new NotFoundCache(new File(localRepo, NOT_FOUND_CACHE_FILE), TimeUnit.HOURS.toMillis(notFoundTtl), refresh);
+  }
+
+  private static RepositoryRouter newRepositoryRouter(RepositorySystemHelper repoSystemHelper) throws IOException {
+    return new RepositoryRouter(new File(localRepo, ROUTES_FILE), repoSystemHelper.getRepositories(), routingRules,
+        refresh);
+  }
+
+  /**
+   * Sends the artifacts to resolve to a running daemon.
+   * 
+   * @return <code>true</code> if the daemon resolved all artifacts
+   * @throws IOException
+   *           if the manifest is not readable or the daemon not reachable
+   */
+  private static boolean requestDaemon() throws IOException {
+    Iterable<DefaultArtifact> roots = artifacts;
+    ManifestReader manifestReader = null;
+    try {
+      if (artifacts.isEmpty()) {
+        manifestReader = openManifest();
+        roots = manifestReader;
+      }
+      return ResolverDaemon.request(clientPort, roots, javadoc, sources, System.out);
+    } finally {
+      IOUtils.closeQuietly(manifestReader);
+    }
   }
 
   private static void parseCommandLine(String[] args) {
@@ -110,7 +318,7 @@ public class MavenDependencyDownloader {
 
     if (line.hasOption('h')) {
       HelpFormatter formatter = new HelpFormatter();
-      String header = "where each [coord] is expected in the format <groupId>:<artifactId>[:<extension>[:<classifier>]]:<version>, separate multiple [coord] by a space. If [coord] is provided the JSON file will be ignored. Defaults are: <extension>=jar, <classifier>=\"\".\n\n Options are:";
+      String header = "where each [coord] is expected in the format <groupId>:<artifactId>[:<extension>[:<classifier>]]:<version>, separate multiple [coord] by a space. If [coord] is provided the JSON or coordinate file will be ignored. Defaults are: <extension>=jar, <classifier>=\"\".\n\n Options are:";
       String footer = "\nAdditonal repositories to be searched for dependencies can be added in file '" + EXTRA_REPO_FILE + "'";
       formatter.printHelp(MavenDependencyDownloader.class.getSimpleName() + " [coords...] [options]", header, options, footer);
       System.exit(0);
@@ -124,7 +332,124 @@ public class MavenDependencyDownloader {
       sources = true;
     }
 
+    if (line.hasOption('m')) {
+      merge = true;
+    }
+
+    if (line.hasOption('t')) {
+      try {
+        threads = Integer.parseInt(line.getOptionValue('t'));
+      } catch (NumberFormatException nfe) {
+        threads = 0;
+      }
+      if (threads < 1) {
+        System.err.println("Invalid number of threads: " + line.getOptionValue('t'));
+        System.exit(1);
+      }
+    }
+
+    if (line.hasOption("prefetch")) {
+      try {
+        prefetchThreads = Integer.parseInt(line.getOptionValue("prefetch"));
+      } catch (NumberFormatException nfe) {
+        prefetchThreads = 0;
+      }
+      if (prefetchThreads < 1) {
+        System.err.println("Invalid number of prefetch threads: " + line.getOptionValue("prefetch"));
+        System.exit(1);
+      }
+    }
+
+    if (line.hasOption("retries")) {
+      try {
+        retries = Integer.parseInt(line.getOptionValue("retries"));
+      } catch (NumberFormatException nfe) {
+        retries = -1;
+      }
+      if (retries < 0) {
+        System.err.println("Invalid number of retries: " + line.getOptionValue("retries"));
+        System.exit(1);
+      }
+    }
+
+    if (line.hasOption("http-client")) {
+      try {
+        httpClient = HttpTransport.valueOf(line.getOptionValue("http-client").toUpperCase(Locale.ENGLISH));
+      } catch (IllegalArgumentException iae) {
+        System.err.println("Invalid HTTP client: " + line.getOptionValue("http-client"));
+        System.exit(1);
+      }
+    }
+
+    if (line.hasOption("repository-connections")) {
+      try {
+        repositoryConnections = Integer.parseInt(line.getOptionValue("repository-connections"));
+      } catch (NumberFormatException nfe) {
+        repositoryConnections = 0;
+      }
+      if (repositoryConnections < 1) {
+        System.err.println("Invalid number of connections: " + line.getOptionValue("repository-connections"));
+        System.exit(1);
+      }
+    }
+
+    if (line.hasOption("update-policy")) {
+      updatePolicy = line.getOptionValue("update-policy").toLowerCase(Locale.ENGLISH);
+      if (!updatePolicy.matches("never|daily|always|interval:\\d+")) {
+        System.err.println("Invalid update policy: " + line.getOptionValue("update-policy"));
+        System.exit(1);
+      }
+    }
+
+    if (line.hasOption("refresh")) {
+      refresh = true;
+      if (updatePolicy == null) {
+        updatePolicy = "always";
+      }
+    }
+
+    if (line.hasOption("rebuild-index")) {
+      rebuildIndex = true;
+    }
+
+    writeLock = line.getOptionValue("write-lock");
+    useLock = line.getOptionValue("use-lock");
+    report = line.getOptionValue("report");
+    treeFile = line.getOptionValue("tree-file");
+    export = line.getOptionValue("export");
+    delta = line.getOptionValue("delta");
+    store = line.getOptionValue("store");
+
+    if (line.hasOption("tree-format")) {
+      try {
+        treeFormat = TreeFormat.valueOf(line.getOptionValue("tree-format").toUpperCase(Locale.ENGLISH));
+      } catch (IllegalArgumentException iae) {
+        System.err.println("Invalid tree format: " + line.getOptionValue("tree-format"));
+        System.exit(1);
+      }
+    }
+
+    if (line.hasOption("quiet-tree")) {
+      quietTree = true;
+    }
+
+    daemonPort = parsePort(line, "daemon");
+    clientPort = parsePort(line, "client");
+
+    if (line.hasOption("not-found-ttl")) {
+      try {
+        notFoundTtl = Integer.parseInt(line.getOptionValue("not-found-ttl"));
+      } catch (NumberFormatException nfe) {
+        notFoundTtl = -1;
+      }
+      if (notFoundTtl < 0) {
+        System.err.println("Invalid time to live: " + line.getOptionValue("not-found-ttl"));
+        System.exit(1);
+      }
+    }
+
     dependencyFile = line.getOptionValue('f', DEFAULT_DEPENDENCY_FILE);
+    coordinateFile = line.getOptionValue('c');
     localRepo = line.getOptionValue('d', DEFAULT_LOCAL_DOWNLOAD_REPO);
 
     // look for CLI
@@ -138,6 +463,23 @@ public class MavenDependencyDownloader {
     }
   }
 
+  private static int parsePort(CommandLine line, String option) {
+    if (!line.hasOption(option)) {
+      return 0;
+    }
+    int port;
+    try {
+      port = Integer.parseInt(line.getOptionValue(option));
+    } catch (NumberFormatException nfe) {
+      port = 0;
+    }
+    if (port < 1 || port > 65535) {
+      System.err.println("Invalid port: " + line.getOptionValue(option));
+      System.exit(1);
+    }
+    return port;
+  }
+
   /**
    * Set up CLI options.
    */
@@ -149,6 +491,10 @@ public class MavenDependencyDownloader {
     Option jsonFile = Option.builder("f").longOpt("dependency-file")
         .desc("use this JSON dependency file (default:" + DEFAULT_DEPENDENCY_FILE + ")").hasArg().argName("JSON-File").build();
 
+    Option coordFile = Option.builder("c").longOpt("coordinate-file")
+        .desc("read one [coord] per line from this file instead of the JSON file, '-' reads from standard input")
+        .hasArg().argName("File").build();
+
     Option depDir = Option.builder("d").longOpt("dependency-dir")
         .desc("download dependencies to this folder (default:" + DEFAULT_LOCAL_DOWNLOAD_REPO + ")").hasArg().argName("Directory")
         .build();
@@ -156,15 +502,154 @@ public class MavenDependencyDownloader {
     Option javadoc = Option.builder("j").longOpt("with-javadoc").desc("download javadoc attachment of artifact").build();
     Option sources = Option.builder("s").longOpt("with-sources").desc("download source attachment of artifact").build();
 
+    Option threads = Option.builder("t").longOpt("threads")
+        .desc("resolve this many artifacts concurrently (default:1)").hasArg().argName("N").build();
+
+    Option merge = Option.builder("m").longOpt("merge")
+        .desc("resolve all artifacts as one dependency graph, conflicting versions are mediated across all artifacts")
+        .build();
+
+    Option retries = Option.builder().longOpt("retries")
+        .desc("repeat downloads failed by the network or the server this often, interrupted downloads are resumed "
+            + "(default:" + RetryingTransporterFactory.DEFAULT_RETRIES + ")").hasArg().argName("N").build();
+
+    Option httpClient = Option.builder().longOpt("http-client")
+        .desc("download with the apache HttpClient or the HTTP client of the jdk (default: apache)").hasArg()
+        .argName("Client").build();
+
+    Option repositoryConnections = Option.builder().longOpt("repository-connections")
+        .desc("download at most N artifacts from each repository at the same time, the largest first (default:"
+            + DownloadScheduler.DEFAULT_CONNECTIONS + ")").hasArg().argName("N").build();
+
+    Option updatePolicy = Option.builder().longOpt("update-policy")
+        .desc("check the cached metadata of version ranges and snapshots for updates never, daily, always or every "
+            + "interval:N minutes (default: daily)").hasArg().argName("Policy").build();
+
+    Option refresh = Option.builder().longOpt("refresh")
+        .desc("ask all repositories again for artifacts which were not found or routed by previous runs and "
+            + "check the metadata of version ranges and snapshots for updates").build();
+    Option notFoundTtl = Option.builder().longOpt("not-found-ttl")
+        .desc("hours to remember artifacts which were not found (default:" + DEFAULT_NOT_FOUND_TTL + ")").hasArg()
+        .argName("Hours").build();
+
+    Option writeLock = Option.builder().longOpt("write-lock")
+        .desc("record the dependency graphs and downloaded artifacts in this lock file").hasArg().argName("File").build();
+    Option useLock = Option.builder().longOpt("use-lock")
+        .desc("download the artifacts of this lock file without collecting dependencies, if it matches the artifacts, "
+            + "repositories and attachments of this run").hasArg().argName("File").build();
+
+    Option rebuildIndex = Option.builder().longOpt("rebuild-index")
+        .desc("discard the index of the artifacts already downloaded, e.g. after files were removed").build();
+
+    Option prefetch = Option.builder().longOpt("prefetch")
+        .desc("download artifacts with N threads while their dependencies are still being collected, "
+            + "this may also download artifacts later dropped by conflict resolution").hasArg().argName("N").build();
+
+    Option report = Option.builder().longOpt("report")
+        .desc("write the durations of the phases and the statistics of each repository to this JSON file").hasArg()
+        .argName("File").build();
+
+    Option treeFormat = Option.builder().longOpt("tree-format")
+        .desc("render the dependency trees as text, dot or json (default: text)").hasArg().argName("Format").build();
+    Option treeFile = Option.builder().longOpt("tree-file")
+        .desc("write the dependency trees to this file instead of the log").hasArg().argName("File").build();
+    Option quietTree = Option.builder().longOpt("quiet-tree").desc("do not render the dependency trees").build();
+
+    Option export = Option.builder().longOpt("export")
+        .desc("also copy the resolved artifacts with checksums and a manifest into this .zip, .tar or .tar.gz archive")
+        .hasArg().argName("Archive").build();
+
+    Option delta = Option.builder().longOpt("delta")
+        .desc("skip the released artifacts listed in this manifest of a previous export, "
+            + "the archive then only contains new or changed artifacts").hasArg().argName("Manifest").build();
+
+    Option store = Option.builder().longOpt("store")
+        .desc("share the release artifacts with other download directories through this directory, "
+            + "they are hard linked instead of downloaded again").hasArg().argName("Directory").build();
+
+    Option daemon = Option.builder().longOpt("daemon")
+        .desc("keep running and resolve the requests of local clients on this port, which is open to every "
+            + "local user").hasArg().argName("Port").build();
+    Option client = Option.builder().longOpt("client")
+        .desc("let the daemon on this port resolve the artifacts, only -j and -s apply").hasArg().argName("Port")
+        .build();
+
     options.addOption(help);
     options.addOption(depDir);
     options.addOption(jsonFile);
+    options.addOption(coordFile);
     options.addOption(javadoc);
     options.addOption(sources);
+    options.addOption(threads);
+    options.addOption(merge);
+    options.addOption(prefetch);
+    options.addOption(retries);
+    options.addOption(httpClient);
+    options.addOption(repositoryConnections);
+    options.addOption(updatePolicy);
+    options.addOption(refresh);
+    options.addOption(notFoundTtl);
+    options.addOption(rebuildIndex);
+    options.addOption(writeLock);
+    options.addOption(useLock);
+    options.addOption(report);
+    options.addOption(treeFormat);
+    options.addOption(treeFile);
+    options.addOption(quietTree);
+    options.addOption(export);
+    options.addOption(delta);
+    options.addOption(store);
+    options.addOption(daemon);
+    options.addOption(client);
+  }
+
+  /**
+   * Opens the manifest listing the artifacts to resolve: the coordinate file
+   * if given, otherwise the JSON dependency file.
+   * 
+   * @return the reader of the manifest
+   * @throws FileNotFoundException
+   *           if the manifest does not exist
+   */
+  private static ManifestReader openManifest() throws FileNotFoundException {
+    if (coordinateFile == null) {
+      return new JsonManifestReader(new FileReader(new File(dependencyFile)));
+    } else if ("-".equals(coordinateFile)) {
+      return new CoordinateManifestReader(new InputStreamReader(System.in));
+    } else {
+      return new CoordinateManifestReader(new FileReader(new File(coordinateFile)));
+    }
+  }
+
+  /**
+   * Reads the lock file to use, if any.
+   * 
+   * @param lockKey
+   *          the key of this run
+   * @return the lock file or <code>null</code> if none applies to this run
+   * @throws Exception
+   */
+  private static LockFile readLockFile(String lockKey) throws Exception {
+    if (useLock == null) {
+      return null;
+    }
+    if (!new File(useLock).isFile()) {
+      log.info("Lock file \"{}\" not found, resolving dependencies.", useLock);
+      return null;
+    }
+    LockFile lockedArtifacts = LockFile.read(new File(useLock));
+    if (!lockKey.equals(lockedArtifacts.getKey())) {
+      log.warn("Lock file \"{}\" does not match the artifacts, repositories, attachments, merge mode or delta, "
+          + "resolving dependencies.", useLock);
+      return null;
+    }
+    return lockedArtifacts;
   }
 
   /**
-   * Reads extra repositories file. Expected format is JSON array.
+   * Reads extra repositories file. Expected format is JSON array. The optional
+   * "groupIds" of a repository route all artifacts whose groupId starts with
+   * one of them to this repository only.
    * 
    * @see #EXTRA_REPO_FILE
    * @throws Exception
@@ -182,6 +667,13 @@ public class MavenDependencyDownloader {
         String id = (String) jsonObj.get("id");
         String repourl = (String) jsonObj.get("repourl");
         extraRepos.put(id, repourl);
+
+        JSONArray groupIds = (JSONArray) jsonObj.get("groupIds");
+        if (groupIds != null) {
+          for (Object groupId : groupIds) {
+            routingRules.put((String) groupId, id);
+          }
+        }
       }
     } catch (FileNotFoundException exc) {
       log.debug("No extra repositories defined. File not found: {}.", EXTRA_REPO_FILE);
@@ -0,0 +1,60 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.util.Map;
+
+import org.slf4j.MDC;
+
+/**
+ * Runs a task with the MDC of the thread which created it. The log of a
+ * download in a pool thread thus reaches the daemon client whose request
+ * queued it (see {@link ResolverDaemon}).
+ *
+ * @author Gemba
+ */
+public class MdcRunnable implements Runnable {
+
+  private final Runnable task;
+  private final Map<String, String> context = MDC.getCopyOfContextMap();
+
+  /**
+   * @param task
+   *          the task to run
+   */
+  public MdcRunnable(Runnable task) {
+    this.task = task;
+  }
+
+  @Override
+  public void run() {
+    Map<String, String> previous = setContext(context);
+    try {
+      task.run();
+    } finally {
+      setContext(previous);
+    }
+  }
+
+  /**
+   * Replaces the MDC of the current thread.
+   *
+   * @param context
+   *          the new MDC, <code>null</code> to clear it
+   * @return the replaced MDC, <code>null</code> if it was empty
+   */
+  public static Map<String, String> setContext(Map<String, String> context) {
+    Map<String, String> previous = MDC.getCopyOfContextMap();
+    if (context == null) {
+      MDC.clear();
+    } else {
+      MDC.setContextMap(context);
+    }
+    return previous;
+  }
+}
@@ -0,0 +1,146 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers artifacts which none of the repositories provides, so that later
+ * runs do not ask the repositories for them again. The entries are kept in a
+ * properties file in the download directory and expire after a time to live.
+ *
+ * @author Gemba
+ */
+public class NotFoundCache {
+
+  private static final Logger log = LoggerFactory.getLogger(NotFoundCache.class);
+
+  private final File file;
+  private final long timeToLive;
+
+  // artifact coordinates -> time it was found missing
+  private final Properties entries = new Properties();
+
+  /**
+   * Loads the cache from a file.
+   *
+   * @param file
+   *          the file storing the cache
+   * @param timeToLive
+   *          milliseconds an artifact is considered missing
+   * @param refresh
+   *          <code>true</code> to ignore the entries of previous runs
+   * @throws IOException
+   *           if the file is not readable
+   */
+  public NotFoundCache(File file, long timeToLive, boolean refresh) throws IOException {
+    this.file = file;
+    this.timeToLive = timeToLive;
+
+    if (refresh) {
+      return;
+    }
+
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      entries.load(in);
+      log.debug("Loaded {} missing artifacts from {}", entries.size(), file);
+    } catch (FileNotFoundException fnfe) {
+      log.debug("No missing artifacts known. File not found: {}.", file);
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  /**
+   * @param artifact
+   *          the artifact to check
+   * @return <code>true</code> if the artifact was not found within the time
+   *         to live
+   */
+  public boolean isMissing(Artifact artifact) {
+    String missingSince = entries.getProperty(artifact.toString());
+    if (missingSince == null) {
+      return false;
+    }
+    if (System.currentTimeMillis() - Long.parseLong(missingSince) > timeToLive) {
+      entries.remove(artifact.toString());
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Records the outcome of a resolution. An artifact counts as missing only if
+   * every repository answered that it does not exist, transfer errors are not
+   * cached.
+   *
+   * @param result
+   *          the result of an artifact request
+   */
+  public void update(ArtifactResult result) {
+    String key = result.getRequest().getArtifact().toString();
+    if (result.isResolved()) {
+      entries.remove(key);
+    } else if (isNotFound(result.getExceptions())) {
+      entries.setProperty(key, Long.toString(System.currentTimeMillis()));
+    }
+  }
+
+  /**
+   * Writes the cache back to its file.
+   *
+   * @throws IOException
+   *           if the file is not writable
+   */
+  public synchronized void save() throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    FileUtils.forceMkdir(file.getParentFile());
+
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream(tmp);
+      entries.store(out, "Artifacts not found in any repository");
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+
+    FileUtils.deleteQuietly(file);
+    FileUtils.moveFile(tmp, file);
+    log.debug("Saved {} missing artifacts to {}", entries.size(), file);
+  }
+
+  private static boolean isNotFound(List<Exception> exceptions) {
+    if (exceptions.isEmpty()) {
+      return false;
+    }
+    for (Exception e : exceptions) {
+      if (!(e instanceof ArtifactNotFoundException)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
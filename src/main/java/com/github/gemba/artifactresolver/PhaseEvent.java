@@ -0,0 +1,69 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of one execution of a {@link RunReport.Phase}. The
+ * event is committed whether or not a run report is written; it costs nothing
+ * unless a recording is started, e.g. with
+ * <code>-XX:StartFlightRecording=filename=run.jfr</code>.
+ *
+ * @author Gemba
+ */
+@Name("com.github.gemba.artifactresolver.Phase")
+@Label("Resolver Phase")
+@Category("Maven Dependency Downloader")
+@Description("Collection of a dependency graph, download of its artifacts or of their attachments")
+public class PhaseEvent extends Event {
+
+  @Label("Phase")
+  private final String phase;
+
+  @Label("Artifact")
+  @Description("The root artifact, empty if the phase covers several roots")
+  private final String artifact;
+
+  // not recorded, the flight recorder ignores transient fields
+  private final transient RunReport.Phase type;
+  private final transient long startNanos = System.nanoTime();
+
+  /**
+   * Creates and begins the event.
+   *
+   * @param type
+   *          the phase
+   * @param artifact
+   *          the root artifact, <code>null</code> for several roots
+   */
+  public PhaseEvent(RunReport.Phase type, Object artifact) {
+    this.type = type;
+    this.phase = type.name().toLowerCase();
+    this.artifact = artifact == null ? "" : artifact.toString();
+    begin();
+  }
+
+  /**
+   * @return the phase
+   */
+  public RunReport.Phase getType() {
+    return type;
+  }
+
+  /**
+   * @return the begin of the event as given by {@link System#nanoTime()}
+   */
+  public long getStartNanos() {
+    return startNanos;
+  }
+}
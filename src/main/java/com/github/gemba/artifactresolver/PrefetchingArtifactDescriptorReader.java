@@ -0,0 +1,52 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import org.apache.maven.repository.internal.DefaultArtifactDescriptorReader;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.impl.ArtifactDescriptorReader;
+import org.eclipse.aether.impl.ArtifactResolver;
+import org.eclipse.aether.resolution.ArtifactDescriptorException;
+import org.eclipse.aether.resolution.ArtifactDescriptorRequest;
+import org.eclipse.aether.resolution.ArtifactDescriptorResult;
+import org.eclipse.aether.spi.locator.Service;
+import org.eclipse.aether.spi.locator.ServiceLocator;
+
+/**
+ * Reads artifact descriptors (POMs) and hands each described artifact to the
+ * {@link ArtifactPrefetcher} of the session, if any, so that it is downloaded
+ * while the collection goes on.
+ *
+ * @author Gemba
+ */
+public class PrefetchingArtifactDescriptorReader implements ArtifactDescriptorReader, Service {
+
+  private DefaultArtifactDescriptorReader delegate;
+  private ArtifactResolver artifactResolver;
+
+  @Override
+  public void initService(ServiceLocator locator) {
+    delegate = new DefaultArtifactDescriptorReader();
+    delegate.initService(locator);
+    artifactResolver = locator.getService(ArtifactResolver.class);
+  }
+
+  @Override
+  public ArtifactDescriptorResult readArtifactDescriptor(RepositorySystemSession session,
+      ArtifactDescriptorRequest request) throws ArtifactDescriptorException {
+    ArtifactDescriptorResult result = delegate.readArtifactDescriptor(session, request);
+
+    ArtifactPrefetcher prefetcher = (ArtifactPrefetcher) session.getData().get(ArtifactPrefetcher.class);
+    Artifact artifact = result.getArtifact();
+    if (prefetcher != null && !"pom".equals(artifact.getExtension())) {
+      prefetcher.prefetch(session, artifactResolver, artifact, request.getRepositories());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,226 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.repository.ArtifactRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Knows which repository serves the artifacts of a groupId, so that the other
+ * repositories are not asked for them.
+ * <p>
+ * Routes come from explicit rules, which map a groupId prefix to a repository,
+ * and from the downloads of previous runs, which are recorded per groupId and
+ * persisted in a properties file. A learned route is forgotten as soon as its
+ * repository misses an artifact of the groupId; {@link #getMisses()} lets
+ * callers detect this and retry without the route.
+ *
+ * @author Gemba
+ */
+public class RepositoryRouter extends AbstractRepositoryListener {
+
+  private static final Logger log = LoggerFactory.getLogger(RepositoryRouter.class);
+
+  private final File file;
+
+  // ids of the repositories routes may point to
+  private final Set<String> repositoryIds = new HashSet<String>();
+
+  // groupId prefix -> repository id
+  private final Map<String, String> rules;
+
+  // groupId -> repository id
+  private final Map<String, String> learned = new ConcurrentHashMap<String, String>();
+
+  private final AtomicInteger misses = new AtomicInteger();
+
+  /**
+   * Loads the learned routes from a file.
+   *
+   * @param file
+   *          the file storing the learned routes
+   * @param repositories
+   *          the repositories routes may point to
+   * @param rules
+   *          explicit rules: groupId prefix -> repository id
+   * @param refresh
+   *          <code>true</code> to ignore the routes learned by previous runs
+   * @throws IOException
+   *           if the file is not readable
+   */
+  public RepositoryRouter(File file, Collection<RemoteRepository> repositories, Map<String, String> rules,
+      boolean refresh) throws IOException {
+    this.file = file;
+    this.rules = new HashMap<String, String>(rules);
+
+    for (RemoteRepository repository : repositories) {
+      repositoryIds.add(repository.getId());
+    }
+
+    for (Entry<String, String> rule : rules.entrySet()) {
+      if (!repositoryIds.contains(rule.getValue())) {
+        log.warn("Ignoring route of {} to unknown repository '{}'", rule.getKey(), rule.getValue());
+        this.rules.remove(rule.getKey());
+      }
+    }
+
+    if (refresh) {
+      return;
+    }
+
+    Properties routes = new Properties();
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      routes.load(in);
+    } catch (FileNotFoundException fnfe) {
+      log.debug("No routes learned yet. File not found: {}.", file);
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+
+    for (String groupId : routes.stringPropertyNames()) {
+      String repositoryId = routes.getProperty(groupId);
+      if (repositoryIds.contains(repositoryId)) {
+        learned.put(groupId, repositoryId);
+      }
+    }
+    log.debug("Loaded {} routes from {}", learned.size(), file);
+  }
+
+  /**
+   * @param groupId
+   *          the groupId of an artifact or metadata
+   * @return the id of the repository serving the groupId or <code>null</code>
+   *         if unknown
+   */
+  public String route(String groupId) {
+    String rule = findRule(groupId);
+    if (rule != null) {
+      return rule;
+    }
+    return learned.get(groupId);
+  }
+
+  /**
+   * @param groupId
+   *          the groupId of an artifact or metadata
+   * @param repository
+   *          the repository to ask
+   * @return <code>true</code> if another repository serves the groupId
+   */
+  public boolean isRoutedElsewhere(String groupId, RemoteRepository repository) {
+    String repositoryId = route(groupId);
+    return repositoryId != null && !repositoryId.equals(repository.getId());
+  }
+
+  /**
+   * Forgets the learned route of a groupId after its repository missed an
+   * artifact. Explicit rules are kept.
+   *
+   * @param groupId
+   *          the groupId of the missed artifact
+   * @param repository
+   *          the repository which missed the artifact
+   */
+  public void missed(String groupId, RemoteRepository repository) {
+    if (findRule(groupId) == null && learned.remove(groupId) != null) {
+      log.debug("Forgetting route of {} to '{}'", groupId, repository.getId());
+      misses.incrementAndGet();
+    }
+  }
+
+  /**
+   * @return the number of learned routes forgotten so far
+   */
+  public int getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Learns the repository of a downloaded artifact.
+   */
+  @Override
+  public void artifactDownloaded(RepositoryEvent event) {
+    ArtifactRepository repository = event.getRepository();
+    if (event.getException() != null || !repositoryIds.contains(repository.getId())) {
+      return;
+    }
+    String groupId = event.getArtifact().getGroupId();
+    if (findRule(groupId) == null && learned.put(groupId, repository.getId()) == null) {
+      log.debug("Routing {} to '{}'", groupId, repository.getId());
+    }
+  }
+
+  /**
+   * Writes the learned routes back to their file.
+   *
+   * @throws IOException
+   *           if the file is not writable
+   */
+  public synchronized void save() throws IOException {
+    Properties routes = new Properties();
+    routes.putAll(learned);
+
+    File tmp = new File(file.getPath() + ".tmp");
+    FileUtils.forceMkdir(file.getParentFile());
+
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream(tmp);
+      routes.store(out, "Repository serving a groupId");
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+
+    FileUtils.deleteQuietly(file);
+    FileUtils.moveFile(tmp, file);
+    log.debug("Saved {} routes to {}", routes.size(), file);
+  }
+
+  /**
+   * @return the repository id of the longest rule matching the groupId
+   */
+  private String findRule(String groupId) {
+    String prefix = groupId;
+    while (true) {
+      String repositoryId = rules.get(prefix);
+      if (repositoryId != null) {
+        return repositoryId;
+      }
+      int dot = prefix.lastIndexOf('.');
+      if (dot < 0) {
+        return null;
+      }
+      prefix = prefix.substring(0, dot);
+    }
+  }
+}
@@ -7,31 +7,45 @@ package com.github.gemba.artifactresolver;
  * which accompanies this distribution (see COPYING), and is available at
  *   http://www.eclipse.org/legal/epl-v10.html
  *******************************************************************************/
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositoryCache;
 import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryListener;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.collection.CollectRequest;
 import org.eclipse.aether.collection.DependencyCollectionException;
-import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
 import org.eclipse.aether.graph.Dependency;
 import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.impl.ArtifactDescriptorReader;
 import org.eclipse.aether.impl.DefaultServiceLocator;
+import org.eclipse.aether.impl.VersionRangeResolver;
 import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
 import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
 import org.eclipse.aether.resolution.DependencyRequest;
 import org.eclipse.aether.resolution.DependencyResolutionException;
 import org.eclipse.aether.resolution.DependencyResult;
 import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
 import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.transfer.TransferListener;
 import org.eclipse.aether.transport.file.FileTransporterFactory;
-import org.eclipse.aether.transport.http.HttpTransporterFactory;
 import org.eclipse.aether.util.artifact.JavaScopes;
 import org.eclipse.aether.util.graph.selector.AndDependencySelector;
+import org.eclipse.aether.util.listener.ChainedRepositoryListener;
+import org.eclipse.aether.util.listener.ChainedTransferListener;
 import org.eclipse.aether.util.graph.selector.ExclusionDependencySelector;
 import org.eclipse.aether.util.graph.selector.OptionalDependencySelector;
 import org.eclipse.aether.util.graph.selector.ScopeDependencySelector;
@@ -41,14 +55,22 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Helper class for resolving dependencies with a set of remote repositories.
+ * <p>
+ * Instances are safe for use by multiple threads: the repositories are
+ * immutable, the session is read-only after its setup and every call builds
+ * its own request.
  * 
  * @author Gemba
  */
 public class RepositorySystemHelper {
 
-  private RepositorySystem repoSystem;
-  private RepositorySystemSession session;
-  private CollectRequest collectRequest;
+  private final RepositorySystem repoSystem;
+  private final RepositorySystemSession session;
+  private final List<RemoteRepository> repositories;
+  private final ChainedRepositoryListener repositoryListener = new ChainedRepositoryListener();
+  private final ChainedTransferListener transferListener = new ChainedTransferListener();
+  private volatile RepositoryRouter router;
+  private volatile ArtifactPrefetcher prefetcher;
 
   private static final Logger log = LoggerFactory.getLogger(RepositorySystemHelper.class);
   
@@ -64,24 +86,58 @@ public class RepositorySystemHelper {
    *          map with extra repositories <id, url>.
    */
   public RepositorySystemHelper(String localRepoDir, Map<String, String> extraRepos) {
-    repoSystem = newRepositorySystem();
+    this(localRepoDir, newRepositories(extraRepos), null);
+  }
 
-    session = newSession(repoSystem, localRepoDir);
+  /**
+   * Initalizes the aether environment with central and the extra
+   * repositories.
+   * 
+   * @param localRepoDir
+   *          path where to put the downloaded dependencies
+   * @param extraRepos
+   *          map with extra repositories <id, url>.
+   * @param updatePolicy
+   *          how often the cached metadata of ranges and snapshots is checked
+   *          for updates: <code>never</code>, <code>daily</code>,
+   *          <code>always</code> or <code>interval:N</code> minutes,
+   *          <code>null</code> for the policy of the repositories
+   */
+  public RepositorySystemHelper(String localRepoDir, Map<String, String> extraRepos, String updatePolicy) {
+    this(localRepoDir, newRepositories(extraRepos), updatePolicy);
+  }
 
-    RemoteRepository central = new RemoteRepository.Builder("central", "default", "http://central.maven.org/maven2/").build();
+  /**
+   * Initalizes the aether environment with the given remote repositories.
+   * 
+   * @param localRepoDir
+   *          path where to put the downloaded dependencies
+   * @param remoteRepos
+   *          the repositories to query in this order
+   */
+  public RepositorySystemHelper(String localRepoDir, List<RemoteRepository> remoteRepos) {
+    this(localRepoDir, remoteRepos, null);
+  }
 
-    collectRequest = new CollectRequest();
-    collectRequest.addRepository(central);
+  /**
+   * Initalizes the aether environment with the given remote repositories.
+   * 
+   * @param localRepoDir
+   *          path where to put the downloaded dependencies
+   * @param remoteRepos
+   *          the repositories to query in this order
+   * @param updatePolicy
+   *          how often the cached metadata of ranges and snapshots is checked
+   *          for updates: <code>never</code>, <code>daily</code>,
+   *          <code>always</code> or <code>interval:N</code> minutes,
+   *          <code>null</code> for the policy of the repositories
+   */
+  public RepositorySystemHelper(String localRepoDir, List<RemoteRepository> remoteRepos, String updatePolicy) {
+    repoSystem = newRepositorySystem();
 
-    RemoteRepository repo = null;
-    Iterator<Entry<String, String>> iterator = extraRepos.entrySet().iterator();
-    while (iterator.hasNext()) {
-      Entry<String, String> e = iterator.next();
-      repo = new RemoteRepository.Builder(e.getKey(), "default", e.getValue()).build();
-      collectRequest.addRepository(repo);
-      log.debug("Using extra repository '{}': {}", e.getKey(), e.getValue());
-    }
+    session = newSession(repoSystem, localRepoDir, updatePolicy);
 
+    repositories = Collections.unmodifiableList(new ArrayList<RemoteRepository>(remoteRepos));
   }
 
   /**
@@ -93,8 +149,23 @@ public class RepositorySystemHelper {
    * @throws DependencyCollectionException
    */
   public DependencyNode collectDependencies(Dependency dependency) throws DependencyCollectionException {
-    collectRequest.setRoot(dependency);
-    return repoSystem.collectDependencies(session, collectRequest).getRoot();
+    CollectRequest collectRequest = new CollectRequest(dependency, repositories);
+    return collectDependencies(collectRequest);
+  }
+
+  /**
+   * Collects the dependencies of several artifacts in one graph. The artifacts
+   * are the children of a root node without dependency, conflicting versions
+   * are mediated across all of them.
+   * 
+   * @param dependencies
+   *          the artifacts to resolve
+   * @return a tree structure of @link {@link DependencyNode}.
+   * @throws DependencyCollectionException
+   */
+  public DependencyNode collectDependencies(List<Dependency> dependencies) throws DependencyCollectionException {
+    CollectRequest collectRequest = new CollectRequest(dependencies, null, repositories);
+    return collectDependencies(collectRequest);
   }
 
   /**
@@ -106,23 +177,265 @@ public class RepositorySystemHelper {
    * @throws DependencyResolutionException
    */
   public DependencyResult resolveDependencies(DependencyRequest dependencyRequest) throws DependencyResolutionException {
+    ArtifactPrefetcher currentPrefetcher = prefetcher;
+    if (currentPrefetcher != null && dependencyRequest.getRoot() != null) {
+      currentPrefetcher.await(dependencyRequest.getRoot());
+    }
+
+    int misses = getRoutingMisses();
+    try {
+      DependencyResult dependencyResult = repoSystem.resolveDependencies(session, dependencyRequest);
+      if (misses == getRoutingMisses()) {
+        return dependencyResult;
+      }
+    } catch (DependencyResolutionException dre) {
+      if (misses == getRoutingMisses()) {
+        throw dre;
+      }
+    }
+    log.debug("Resolving dependencies again without outdated routes");
     return repoSystem.resolveDependencies(session, dependencyRequest);
   }
 
   /**
-   * Set up repository session for maven.
+   * Downloads a batch of artifacts without their dependencies. Artifacts from
+   * the same repository are downloaded concurrently.
+   * 
+   * @param artifactRequests
+   *          the artifact requests
+   * @return the results in the order of the requests
+   * @throws ArtifactResolutionException
+   *           if any artifact could not be resolved, the exception carries the
+   *           results of all requests
+   */
+  public List<ArtifactResult> resolveArtifacts(Collection<? extends ArtifactRequest> artifactRequests)
+      throws ArtifactResolutionException {
+    int misses = getRoutingMisses();
+    try {
+      List<ArtifactResult> artifactResults = repoSystem.resolveArtifacts(session, artifactRequests);
+      if (misses == getRoutingMisses()) {
+        return artifactResults;
+      }
+    } catch (ArtifactResolutionException are) {
+      if (misses == getRoutingMisses()) {
+        throw are;
+      }
+    }
+    log.debug("Resolving artifacts again without outdated routes");
+    return repoSystem.resolveArtifacts(session, artifactRequests);
+  }
+
+  /**
+   * Routes the requests of a groupId to the repository known to serve it. The
+   * router learns from the downloads of this session.
+   * 
+   * @param router
+   *          the router, <code>null</code> to ask all repositories
+   */
+  public void setRepositoryRouter(RepositoryRouter router) {
+    if (this.router != null) {
+      repositoryListener.remove(this.router);
+    }
+    if (router != null) {
+      session.getData().set(RepositoryRouter.class, router);
+      repositoryListener.add(router);
+    } else {
+      session.getData().set(RepositoryRouter.class, null);
+    }
+    this.router = router;
+  }
+
+  /**
+   * @return the router, <code>null</code> if all repositories are asked
+   */
+  public RepositoryRouter getRepositoryRouter() {
+    return router;
+  }
+
+  /**
+   * Downloads the artifacts of a dependency graph while it is collected. The
+   * resolution of the graph waits for these downloads.
+   * 
+   * @param prefetcher
+   *          the prefetcher, <code>null</code> to download after the collection
+   */
+  public void setArtifactPrefetcher(ArtifactPrefetcher prefetcher) {
+    session.getData().set(ArtifactPrefetcher.class, prefetcher);
+    this.prefetcher = prefetcher;
+  }
+
+  /**
+   * Shares the release artifacts with other download directories through a
+   * store. Artifacts in the store are linked instead of downloaded.
+   * 
+   * @param store
+   *          the store, <code>null</code> to download all artifacts
+   */
+  public void setArtifactStore(ArtifactStore store) {
+    session.getData().set(ArtifactStore.class, store);
+  }
+
+  /**
+   * Orders the artifact downloads of each repository, the largest first, and
+   * limits the concurrent downloads per repository.
+   * 
+   * @param scheduler
+   *          the scheduler, <code>null</code> to download in the order of
+   *          aether
+   */
+  public void setDownloadScheduler(DownloadScheduler scheduler) {
+    session.getData().set(DownloadScheduler.class, scheduler);
+  }
+
+  /**
+   * Sets how often a download failed by the network or the server is
+   * repeated. Interrupted downloads continue where they stopped.
+   * 
+   * @param retries
+   *          the retries per download, 0 to fail on the first error
+   */
+  public void setRetries(int retries) {
+    session.getData().set(RetryingTransporterFactory.RETRIES_KEY, Integer.valueOf(retries));
+  }
+
+  /**
+   * Sets the HTTP client downloading from remote repositories.
+   * 
+   * @param transport
+   *          the HTTP client to use
+   */
+  public void setHttpTransport(HttpTransport transport) {
+    session.getData().set(RetryingTransporterFactory.TRANSPORT_KEY, transport);
+  }
+
+  /**
+   * Forgets which metadata was already checked for updates in this session
+   * and which indexed files were checked. The next resolution checks them
+   * again, as a new session would, while the caches of the session are kept.
+   */
+  public void checkForUpdates() {
+    // the session data key of aether's DefaultUpdateCheckManager
+    session.getData().set("updateCheckManager.checks", null);
+    IndexedLocalRepositoryManager.forgetChecks(session);
+  }
+
+  /**
+   * Adds a listener for the repository events of this session.
+   * 
+   * @param listener
+   *          the listener to add
+   */
+  public void addRepositoryListener(RepositoryListener listener) {
+    repositoryListener.add(listener);
+  }
+
+  /**
+   * Adds a listener for the transfers of this session.
+   * 
+   * @param listener
+   *          the listener to add
+   */
+  public void addTransferListener(TransferListener listener) {
+    transferListener.add(listener);
+  }
+
+  /**
+   * @return the remote repositories in the order they are queried
+   */
+  public List<RemoteRepository> getRepositories() {
+    return repositories;
+  }
+
+  /**
+   * Collects a dependency graph. A collection which made the router forget a
+   * route is repeated, as it may have skipped a repository serving an
+   * artifact.
+   * 
+   * @param collectRequest
+   *          the collect request
+   * @return the root of the graph
+   * @throws DependencyCollectionException
+   */
+  private DependencyNode collectDependencies(CollectRequest collectRequest) throws DependencyCollectionException {
+    int misses = getRoutingMisses();
+    try {
+      DependencyNode node = repoSystem.collectDependencies(session, collectRequest).getRoot();
+      if (misses == getRoutingMisses()) {
+        return node;
+      }
+    } catch (DependencyCollectionException dce) {
+      if (misses == getRoutingMisses()) {
+        throw dce;
+      }
+    }
+    log.debug("Collecting dependencies again without outdated routes");
+    return repoSystem.collectDependencies(session, collectRequest).getRoot();
+  }
+
+  private int getRoutingMisses() {
+    RepositoryRouter currentRouter = router;
+    return currentRouter == null ? 0 : currentRouter.getMisses();
+  }
+
+  /**
+   * Builds the remote repositories: central first, then the extra ones.
+   * 
+   * @param extraRepos
+   *          map with extra repositories <id, url>.
+   * @return the list of remote repositories
+   */
+  private static List<RemoteRepository> newRepositories(Map<String, String> extraRepos) {
+    List<RemoteRepository> repos = new ArrayList<RemoteRepository>();
+
+    RemoteRepository central = new RemoteRepository.Builder("central", "default", "http://central.maven.org/maven2/").build();
+    repos.add(central);
+
+    RemoteRepository repo = null;
+    Iterator<Entry<String, String>> iterator = extraRepos.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Entry<String, String> e = iterator.next();
+      repo = new RemoteRepository.Builder(e.getKey(), "default", e.getValue()).build();
+      repos.add(repo);
+      log.debug("Using extra repository '{}': {}", e.getKey(), e.getValue());
+    }
+    return repos;
+  }
+
+  /**
+   * Set up repository session for maven. The returned session is read-only
+   * and may be shared by concurrent resolutions.
+   * <p>
+   * The <code>maven-metadata.xml</code> listing the versions of a range or
+   * snapshot is kept per repository in the local repository. It is requested
+   * again once the update policy says it is outdated: <code>never</code>,
+   * <code>daily</code> (the default of the repositories),
+   * <code>always</code> or <code>interval:N</code> minutes. Within the
+   * session the versions of a range are only read once, see
+   * {@link CachingVersionRangeResolver}.
    * 
    * @param system
    *          the repository system
    * @param localDownloadDir
    *          the directory where to put the downloaded artifacts
+   * @param updatePolicy
+   *          the update policy overriding the one of the repositories,
+   *          <code>null</code> to keep theirs
    * @return the configured repository session
    */
-  private RepositorySystemSession newSession(RepositorySystem system, final String localDownloadDir) {
+  private RepositorySystemSession newSession(RepositorySystem system, final String localDownloadDir,
+      String updatePolicy) {
     DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
 
     LocalRepository localRepo = new LocalRepository(localDownloadDir);
-    session.setLocalRepositoryManager(system.newLocalRepositoryManager(session, localRepo));
+    LocalRepositoryManager localRepoManager = new StoreLocalRepositoryManager(
+        system.newLocalRepositoryManager(session, localRepo));
+    try {
+      LocalRepositoryIndex index = new LocalRepositoryIndex(localRepo.getBasedir());
+      localRepoManager = new IndexedLocalRepositoryManager(localRepoManager, index);
+    } catch (IOException ioe) {
+      log.warn("Cannot read the index of the local repository: {}", ioe.getMessage());
+    }
+    session.setLocalRepositoryManager(localRepoManager);
 
     DependencySelector depFilter =
         new AndDependencySelector(
@@ -132,6 +445,24 @@ public class RepositorySystemHelper {
     );
     session.setDependencySelector(depFilter);
 
+    // shares parsed POMs, artifact descriptors and version ranges between
+    // collections
+    session.setCache(new DefaultRepositoryCache());
+
+    if (updatePolicy != null) {
+      session.setUpdatePolicy(updatePolicy);
+    }
+
+    // keeps interrupted downloads as .part files to be resumed by the next run
+    session.setConfigProperty("aether.connector.resumeDownloads", Boolean.TRUE);
+
+    // emits flight recorder events while a recording is running
+    transferListener.add(new DownloadEventRecorder());
+
+    session.setRepositoryListener(repositoryListener);
+    session.setTransferListener(transferListener);
+
+    session.setReadOnly();
     return session;
   }
 
@@ -143,9 +474,11 @@ public class RepositorySystemHelper {
   private RepositorySystem newRepositorySystem() {
     DefaultServiceLocator locator = MavenRepositorySystemUtils.newServiceLocator();
 
-    locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
+    locator.setService(ArtifactDescriptorReader.class, PrefetchingArtifactDescriptorReader.class);
+    locator.setService(VersionRangeResolver.class, CachingVersionRangeResolver.class);
+    locator.addService(RepositoryConnectorFactory.class, RoutingRepositoryConnectorFactory.class);
     locator.addService(TransporterFactory.class, FileTransporterFactory.class);
-    locator.addService(TransporterFactory.class, HttpTransporterFactory.class);
+    locator.addService(TransporterFactory.class, RetryingTransporterFactory.class);
 
     locator.setErrorHandler(new DefaultServiceLocator.ErrorHandler() {
       @Override
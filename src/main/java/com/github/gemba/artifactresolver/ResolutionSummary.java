@@ -0,0 +1,164 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The outcome of each root artifact of a run: the number of artifacts in its
+ * dependency tree and the artifacts which failed. A failed root does not stop
+ * the resolution of the others, the summary lists all of them at the end.
+ *
+ * @author Gemba
+ */
+public class ResolutionSummary {
+
+  private static final Logger log = LoggerFactory.getLogger(ResolutionSummary.class);
+
+  // coordinates of the root -> outcome
+  private final Map<String, Root> roots = new LinkedHashMap<String, Root>();
+
+  /**
+   * Records a root whose dependency tree was collected.
+   *
+   * @param root
+   *          the coordinates of the root
+   * @param graph
+   *          the graph of the tree
+   * @param node
+   *          the root node of the tree
+   * @param failures
+   *          coordinates -> reason of the artifacts which failed, those of
+   *          other trees are ignored
+   */
+  public void resolved(String root, DependencyGraph graph, int node, Map<String, String> failures) {
+    Set<String> artifacts = new HashSet<String>();
+    collect(graph, node, new HashSet<Integer>(), artifacts);
+
+    Root outcome = new Root(artifacts.size(), null);
+    for (Map.Entry<String, String> failure : failures.entrySet()) {
+      if (artifacts.contains(failure.getKey())) {
+        outcome.failures.put(failure.getKey(), failure.getValue());
+      }
+    }
+    synchronized (this) {
+      roots.put(root, outcome);
+    }
+  }
+
+  /**
+   * Records a root whose dependency tree could not be collected.
+   *
+   * @param root
+   *          the coordinates of the root
+   * @param reason
+   *          the reason of the failure
+   */
+  public synchronized void failed(String root, String reason) {
+    roots.put(root, new Root(0, reason));
+  }
+
+  /**
+   * @return the number of roots with failed artifacts
+   */
+  public synchronized int getFailed() {
+    int failed = 0;
+    for (Root outcome : roots.values()) {
+      if (outcome.isFailed()) {
+        failed++;
+      }
+    }
+    return failed;
+  }
+
+  /**
+   * Logs the outcome of each root, the failed artifacts as errors.
+   */
+  public synchronized void log() {
+    if (roots.isEmpty()) {
+      return;
+    }
+    log.info("Resolved {} of {} root artifacts:", roots.size() - getFailed(), roots.size());
+    for (Map.Entry<String, Root> entry : roots.entrySet()) {
+      Root outcome = entry.getValue();
+      if (outcome.reason != null) {
+        log.error("  FAILED {}: {}", entry.getKey(), outcome.reason);
+      } else if (outcome.isFailed()) {
+        log.error("  FAILED {} ({} of {} artifacts)", entry.getKey(), outcome.failures.size(), outcome.artifacts);
+        for (Map.Entry<String, String> failure : outcome.failures.entrySet()) {
+          log.error("           {}: {}", failure.getKey(), failure.getValue());
+        }
+      } else {
+        log.info("  ok     {} ({} artifacts)", entry.getKey(), outcome.artifacts);
+      }
+    }
+  }
+
+  /**
+   * @return one object per root with its artifact count and failures
+   */
+  public synchronized List<Map<String, Object>> toJson() {
+    List<Map<String, Object>> json = new ArrayList<Map<String, Object>>();
+    for (Map.Entry<String, Root> entry : roots.entrySet()) {
+      Root outcome = entry.getValue();
+      Map<String, Object> root = new LinkedHashMap<String, Object>();
+      root.put("artifact", entry.getKey());
+      root.put("succeeded", !outcome.isFailed());
+      root.put("artifacts", outcome.artifacts);
+      if (outcome.reason != null) {
+        root.put("reason", outcome.reason);
+      }
+      root.put("failures", new LinkedHashMap<String, String>(outcome.failures));
+      json.add(root);
+    }
+    return json;
+  }
+
+  /**
+   * Collects the coordinates of a tree, shared subtrees are visited once.
+   */
+  private static void collect(DependencyGraph graph, int node, Set<Integer> visited, Set<String> artifacts) {
+    if (visited.add(Integer.valueOf(node))) {
+      artifacts.add(graph.getCoordinates(node));
+      int count = graph.getChildCount(node);
+      for (int i = 0; i < count; i++) {
+        collect(graph, graph.getChild(node, i), visited, artifacts);
+      }
+    }
+  }
+
+  /**
+   * Outcome of one root.
+   */
+  private static class Root {
+
+    private final int artifacts;
+    private final String reason;
+
+    // coordinates -> reason
+    private final Map<String, String> failures = new TreeMap<String, String>();
+
+    Root(int artifacts, String reason) {
+      this.artifacts = artifacts;
+      this.reason = reason;
+    }
+
+    boolean isFailed() {
+      return reason != null || !failures.isEmpty();
+    }
+  }
+}
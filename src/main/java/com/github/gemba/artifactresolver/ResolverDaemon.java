@@ -0,0 +1,302 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+
+/**
+ * Resolves requests of local clients with one long-lived repository system,
+ * so that the service wiring, the session caches and the connection pool stay
+ * warm between resolutions.
+ * <p>
+ * The daemon listens on a port of the loopback interface. A client sends one
+ * line with the coordinates to resolve, optionally preceded by
+ * <code>-j</code> and <code>-s</code> for javadoc and sources, e.g.:
+ *
+ * <pre>
+ * echo "-s org.slf4j:slf4j-api:1.7.18" | nc localhost 7777
+ * </pre>
+ *
+ * The log of the resolution is streamed back line by line, the last line is
+ * {@value #RESULT_OK} or {@value #RESULT_FAILED} followed by the reason.
+ * <p>
+ * The port is not protected: every local user may let the daemon download
+ * artifacts into its directory and read the log of the requests.
+ *
+ * @author Gemba
+ */
+public class ResolverDaemon {
+
+  private static final Logger log = LoggerFactory.getLogger(ResolverDaemon.class);
+
+  /** last line of a successful resolution */
+  public static final String RESULT_OK = "#OK";
+
+  /** prefix of the last line of a failed resolution */
+  public static final String RESULT_FAILED = "#FAILED";
+
+  // MDC key of the client whose request a thread is resolving
+  private static final String MDC_CLIENT = "mvn-dd.client";
+
+  private static final int HANDLER_THREADS = 4;
+
+  // milliseconds to wait for the request line of a client
+  private static final int REQUEST_TIMEOUT = 10000;
+
+  private final RepositorySystemHelper repoSystemHelper;
+  private final NotFoundCache notFoundCache;
+  private final RepositoryRouter router;
+
+  private final AtomicInteger clients = new AtomicInteger();
+
+  /**
+   * @param repoSystemHelper
+   *          the helper shared by all requests
+   * @param notFoundCache
+   *          the cache of missing artifacts, saved after each request
+   * @param router
+   *          the router set on the helper, saved after each request
+   */
+  public ResolverDaemon(RepositorySystemHelper repoSystemHelper, NotFoundCache notFoundCache,
+      RepositoryRouter router) {
+    this.repoSystemHelper = repoSystemHelper;
+    this.notFoundCache = notFoundCache;
+    this.router = router;
+  }
+
+  /**
+   * Accepts requests until the process is stopped.
+   *
+   * @param port
+   *          the port on the loopback interface
+   * @throws IOException
+   *           if the port cannot be bound
+   */
+  public void serve(int port) throws IOException {
+    ClientAppender.install();
+    ExecutorService executor = Executors.newFixedThreadPool(HANDLER_THREADS, new HandlerThreadFactory());
+    ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+    log.info("Waiting for requests on {}:{} ...", serverSocket.getInetAddress().getHostAddress(), port);
+    try {
+      while (true) {
+        final Socket socket = serverSocket.accept();
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            handle(socket);
+          }
+        });
+      }
+    } finally {
+      IOUtils.closeQuietly(serverSocket);
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Sends a request to a daemon and copies the streamed log to the given
+   * stream.
+   *
+   * @param port
+   *          the port of the daemon on the loopback interface
+   * @param artifacts
+   *          the artifacts to resolve
+   * @param javadoc
+   *          <code>true</code> if javadoc attachment should be retrieved too
+   * @param sources
+   *          <code>true</code> if sources attachment should be retrieved too
+   * @param out
+   *          the stream to copy the log to
+   * @return <code>true</code> if the daemon resolved all artifacts
+   * @throws IOException
+   *           if the daemon is not reachable
+   */
+  public static boolean request(int port, Iterable<DefaultArtifact> artifacts, boolean javadoc, boolean sources,
+      PrintStream out) throws IOException {
+    StringBuilder request = new StringBuilder();
+    if (javadoc) {
+      request.append("-j ");
+    }
+    if (sources) {
+      request.append("-s ");
+    }
+    for (DefaultArtifact artifact : artifacts) {
+      request.append(artifact).append(' ');
+    }
+
+    Socket socket = new Socket(InetAddress.getByName(null), port);
+    try {
+      PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true);
+      writer.println(request.toString().trim());
+
+      BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (line.equals(RESULT_OK)) {
+          return true;
+        } else if (line.startsWith(RESULT_FAILED)) {
+          // the reason was logged before
+          return false;
+        }
+        out.println(line);
+      }
+      out.println("The daemon closed the connection without result");
+      return false;
+    } finally {
+      IOUtils.closeQuietly(socket);
+    }
+  }
+
+  /**
+   * Resolves the request of one client. The log lines of the resolution are
+   * sent to the client.
+   */
+  private void handle(Socket socket) {
+    String client = "client-" + clients.incrementAndGet();
+    PrintWriter writer = null;
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+      writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), true);
+      // a silent client must not hold a handler thread
+      socket.setSoTimeout(REQUEST_TIMEOUT);
+      String request = reader.readLine();
+      if (request == null) {
+        return;
+      }
+      socket.setSoTimeout(0);
+
+      ClientAppender.register(client, writer);
+      MDC.put(MDC_CLIENT, client);
+      try {
+        resolve(request);
+        writer.println(RESULT_OK);
+      } catch (Exception e) {
+        log.error("Resolving {} failed: {}", request, e.getMessage());
+        writer.println(RESULT_FAILED + " " + e.getMessage());
+      } finally {
+        MDC.remove(MDC_CLIENT);
+        ClientAppender.unregister(client);
+        save();
+      }
+    } catch (IOException ioe) {
+      log.warn("Cannot talk to {}: {}", client, ioe.getMessage());
+    } finally {
+      IOUtils.closeQuietly(writer);
+      IOUtils.closeQuietly(socket);
+    }
+  }
+
+  private void resolve(String request) throws Exception {
+    boolean javadoc = false;
+    boolean sources = false;
+    List<DefaultArtifact> artifacts = new ArrayList<DefaultArtifact>();
+    for (String token : request.trim().split("\\s+")) {
+      if (token.equals("-j") || token.equals("--javadoc")) {
+        javadoc = true;
+      } else if (token.equals("-s") || token.equals("--sources")) {
+        sources = true;
+      } else if (token.length() > 0) {
+        artifacts.add(new DefaultArtifact(token));
+      }
+    }
+
+    repoSystemHelper.checkForUpdates();
+    DependencyResolver dependencyResolver = new DependencyResolver(repoSystemHelper);
+    dependencyResolver.setNotFoundCache(notFoundCache);
+    ResolutionSummary summary = new ResolutionSummary();
+    dependencyResolver.setSummary(summary);
+    try {
+      dependencyResolver.downloadDependencyTrees(artifacts, javadoc, sources, 1);
+    } finally {
+      summary.log();
+    }
+  }
+
+  private synchronized void save() {
+    try {
+      notFoundCache.save();
+      router.save();
+    } catch (IOException ioe) {
+      log.warn("Cannot save the caches: {}", ioe.getMessage());
+    }
+  }
+
+  /**
+   * Sends the log events of a request to the client of the request, as
+   * identified by the MDC of the logging thread.
+   */
+  private static class ClientAppender extends AppenderBase<ILoggingEvent> {
+
+    // client -> connection
+    private static final Map<String, PrintWriter> writers = new ConcurrentHashMap<String, PrintWriter>();
+
+    static void install() {
+      ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) LoggerFactory
+          .getLogger(ResolverDaemon.class.getPackage().getName());
+      ClientAppender appender = new ClientAppender();
+      appender.setContext(logger.getLoggerContext());
+      appender.setName("client");
+      appender.start();
+      logger.addAppender(appender);
+    }
+
+    static void register(String client, PrintWriter writer) {
+      writers.put(client, writer);
+    }
+
+    static void unregister(String client) {
+      writers.remove(client);
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+      String client = event.getMDCPropertyMap().get(MDC_CLIENT);
+      PrintWriter writer = client == null ? null : writers.get(client);
+      if (writer != null) {
+        writer.println(event.getFormattedMessage());
+      }
+    }
+  }
+
+  /**
+   * Names the threads handling the clients.
+   */
+  private static class HandlerThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      return new Thread(runnable, "daemon-" + count.incrementAndGet());
+    }
+  }
+}
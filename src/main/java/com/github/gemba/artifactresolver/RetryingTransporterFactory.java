@@ -0,0 +1,251 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.HttpResponseException;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.PeekTask;
+import org.eclipse.aether.spi.connector.transport.PutTask;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.spi.locator.Service;
+import org.eclipse.aether.spi.locator.ServiceLocator;
+import org.eclipse.aether.transfer.NoTransporterException;
+import org.eclipse.aether.transport.http.HttpTransporterFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates HTTP transporters which repeat downloads failed by the network or
+ * the server. A download interrupted by a reset connection continues with a
+ * range request from the bytes already written, so a flaky connection does
+ * not fail the resolution of a whole dependency tree. The transporters are
+ * built on the {@link HttpTransport} set in the session data, the Apache
+ * HttpClient by default.
+ * <p>
+ * The delay before a retry grows exponentially with the consecutive failures
+ * of the repository and is jittered, so the concurrent downloads from a
+ * struggling repository do not come back at once. A successful download
+ * resets the delay of its repository.
+ * <p>
+ * The basic connector downloads into <code>.part</code> files which are kept
+ * after a failed run, the first request of the next run resumes them.
+ *
+ * @author Gemba
+ */
+public class RetryingTransporterFactory implements TransporterFactory, Service {
+
+  private static final Logger log = LoggerFactory.getLogger(RetryingTransporterFactory.class);
+
+  /** session data key of the number of retries per download, an Integer */
+  public static final String RETRIES_KEY = RetryingTransporterFactory.class.getName() + ".retries";
+
+  /** session data key of the {@link HttpTransport} to use */
+  public static final String TRANSPORT_KEY = RetryingTransporterFactory.class.getName() + ".transport";
+
+  /** default number of retries per download */
+  public static final int DEFAULT_RETRIES = 3;
+
+  private static final long INITIAL_DELAY_MILLIS = 500;
+  private static final long MAX_DELAY_MILLIS = 30000;
+
+  private static final Random random = new Random();
+
+  private final Map<HttpTransport, TransporterFactory> delegates = new EnumMap<HttpTransport, TransporterFactory>(
+      HttpTransport.class);
+
+  // repository id and url -> backoff
+  private final ConcurrentMap<String, Backoff> backoffs = new ConcurrentHashMap<String, Backoff>();
+
+  @Override
+  public void initService(ServiceLocator locator) {
+    HttpTransporterFactory apache = new HttpTransporterFactory();
+    apache.initService(locator);
+    delegates.put(HttpTransport.APACHE, apache);
+    delegates.put(HttpTransport.JDK, new JdkHttpTransporterFactory());
+  }
+
+  @Override
+  public float getPriority() {
+    return delegates.get(HttpTransport.APACHE).getPriority();
+  }
+
+  @Override
+  public Transporter newInstance(RepositorySystemSession session, RemoteRepository repository)
+      throws NoTransporterException {
+    HttpTransport transport = (HttpTransport) session.getData().get(TRANSPORT_KEY);
+    Transporter transporter = delegates.get(transport == null ? HttpTransport.APACHE : transport).newInstance(session,
+        repository);
+    Integer retries = (Integer) session.getData().get(RETRIES_KEY);
+    int attempts = 1 + (retries == null ? DEFAULT_RETRIES : retries.intValue());
+    if (attempts <= 1) {
+      return transporter;
+    }
+    return new RetryingTransporter(transporter, repository, attempts, getBackoff(repository));
+  }
+
+  private Backoff getBackoff(RemoteRepository repository) {
+    String key = repository.getId() + " " + repository.getUrl();
+    Backoff backoff = backoffs.get(key);
+    if (backoff == null) {
+      Backoff newBackoff = new Backoff();
+      backoff = backoffs.putIfAbsent(key, newBackoff);
+      if (backoff == null) {
+        backoff = newBackoff;
+      }
+    }
+    return backoff;
+  }
+
+  /**
+   * Consecutive failures of a repository.
+   */
+  private static class Backoff {
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * @return the delay before the next retry, between half and all of the
+     *         exponential delay
+     */
+    long failed() {
+      int shift = Math.min(failures.incrementAndGet() - 1, 16);
+      long delay = Math.min(MAX_DELAY_MILLIS, INITIAL_DELAY_MILLIS << shift);
+      long half = delay / 2;
+      synchronized (random) {
+        return half + (long) (random.nextDouble() * half);
+      }
+    }
+
+    void succeeded() {
+      failures.set(0);
+    }
+  }
+
+  /**
+   * Transporter repeating the requests failed by the network or the server.
+   */
+  private static class RetryingTransporter implements Transporter {
+
+    private final Transporter delegate;
+    private final RemoteRepository repository;
+    private final int attempts;
+    private final Backoff backoff;
+
+    RetryingTransporter(Transporter delegate, RemoteRepository repository, int attempts, Backoff backoff) {
+      this.delegate = delegate;
+      this.repository = repository;
+      this.attempts = attempts;
+      this.backoff = backoff;
+    }
+
+    @Override
+    public int classify(Throwable error) {
+      return delegate.classify(error);
+    }
+
+    @Override
+    public void peek(PeekTask task) throws Exception {
+      for (int attempt = 1;; attempt++) {
+        try {
+          delegate.peek(task);
+          backoff.succeeded();
+          return;
+        } catch (Exception e) {
+          retryAfter(e, attempt, task.getLocation().toString());
+        }
+      }
+    }
+
+    @Override
+    public void get(GetTask task) throws Exception {
+      for (int attempt = 1;; attempt++) {
+        try {
+          delegate.get(task);
+          backoff.succeeded();
+          return;
+        } catch (Exception e) {
+          retryAfter(e, attempt, task.getLocation().toString());
+          File dataFile = task.getDataFile();
+          if (dataFile != null) {
+            // requests the missing bytes only
+            task.setDataFile(dataFile, true);
+          }
+        }
+      }
+    }
+
+    @Override
+    public void put(PutTask task) throws Exception {
+      delegate.put(task);
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+
+    @Override
+    public String toString() {
+      return delegate.toString();
+    }
+
+    /**
+     * Waits before the next attempt of a failed request.
+     *
+     * @throws Exception
+     *           the failure, if it is final
+     */
+    private void retryAfter(Exception failure, int attempt, String location) throws Exception {
+      if (attempt >= attempts || !isRetryWorthy(failure)) {
+        throw failure;
+      }
+      long delay = backoff.failed();
+      log.info("Retrying {} from '{}' in {} ms ({}/{}): {}", location, repository.getId(), delay, attempt,
+          attempts - 1, failure.getMessage());
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw failure;
+      }
+    }
+
+    /**
+     * Missing resources, unknown hosts and refused requests fail again, lost
+     * connections and overloaded servers may not.
+     */
+    private boolean isRetryWorthy(Exception failure) {
+      if (classify(failure) == ERROR_NOT_FOUND || failure instanceof UnknownHostException) {
+        return false;
+      }
+      int status = -1;
+      if (failure instanceof HttpStatusException) {
+        status = ((HttpStatusException) failure).getStatusCode();
+      } else if (failure instanceof HttpResponseException) {
+        status = ((HttpResponseException) failure).getStatusCode();
+      }
+      if (status >= 0) {
+        return status == 408 || status == 429 || status >= 500;
+      }
+      return failure instanceof IOException;
+    }
+  }
+}
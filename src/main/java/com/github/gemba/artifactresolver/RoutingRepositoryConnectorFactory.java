@@ -0,0 +1,199 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.ArtifactDownload;
+import org.eclipse.aether.spi.connector.ArtifactUpload;
+import org.eclipse.aether.spi.connector.MetadataDownload;
+import org.eclipse.aether.spi.connector.MetadataUpload;
+import org.eclipse.aether.spi.connector.RepositoryConnector;
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+import org.eclipse.aether.spi.connector.layout.RepositoryLayout;
+import org.eclipse.aether.spi.connector.layout.RepositoryLayoutProvider;
+import org.eclipse.aether.spi.locator.Service;
+import org.eclipse.aether.spi.locator.ServiceLocator;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.NoRepositoryConnectorException;
+import org.eclipse.aether.transfer.NoRepositoryLayoutException;
+
+/**
+ * Creates basic repository connectors which consult the
+ * {@link RepositoryRouter} of the session: downloads of a groupId routed to
+ * another repository fail as not found without a request, with a
+ * {@link SkippedArtifactException} or {@link SkippedMetadataException}. The remaining
+ * artifact downloads are ordered by the {@link DownloadScheduler} of the
+ * session, if set.
+ *
+ * @author Gemba
+ */
+public class RoutingRepositoryConnectorFactory implements RepositoryConnectorFactory, Service {
+
+  private BasicRepositoryConnectorFactory delegate;
+
+  private RepositoryLayoutProvider layoutProvider;
+
+  @Override
+  public void initService(ServiceLocator locator) {
+    delegate = new BasicRepositoryConnectorFactory();
+    delegate.initService(locator);
+    layoutProvider = locator.getService(RepositoryLayoutProvider.class);
+  }
+
+  @Override
+  public float getPriority() {
+    return delegate.getPriority();
+  }
+
+  @Override
+  public RepositoryConnector newInstance(RepositorySystemSession session, RemoteRepository repository)
+      throws NoRepositoryConnectorException {
+    RepositoryConnector connector = delegate.newInstance(session, repository);
+    DownloadScheduler scheduler = (DownloadScheduler) session.getData().get(DownloadScheduler.class);
+    if (scheduler != null) {
+      connector = scheduler.newConnector(session, repository, newLayout(session, repository), connector);
+    }
+    RepositoryRouter router = (RepositoryRouter) session.getData().get(RepositoryRouter.class);
+    if (router == null) {
+      return connector;
+    }
+    return new RoutingRepositoryConnector(connector, router, repository);
+  }
+
+  /**
+   * @return the layout of the repository, <code>null</code> if unknown
+   */
+  private RepositoryLayout newLayout(RepositorySystemSession session, RemoteRepository repository) {
+    try {
+      return layoutProvider == null ? null : layoutProvider.newRepositoryLayout(session, repository);
+    } catch (NoRepositoryLayoutException nrle) {
+      return null;
+    }
+  }
+
+  /**
+   * Connector skipping the downloads routed to other repositories.
+   */
+  private static class RoutingRepositoryConnector implements RepositoryConnector {
+
+    private final RepositoryConnector delegate;
+    private final RepositoryRouter router;
+    private final RemoteRepository repository;
+
+    RoutingRepositoryConnector(RepositoryConnector delegate, RepositoryRouter router, RemoteRepository repository) {
+      this.delegate = delegate;
+      this.router = router;
+      this.repository = repository;
+    }
+
+    @Override
+    public void get(Collection<? extends ArtifactDownload> artifactDownloads,
+        Collection<? extends MetadataDownload> metadataDownloads) {
+      List<ArtifactDownload> artifacts = new ArrayList<ArtifactDownload>();
+      if (artifactDownloads != null) {
+        for (ArtifactDownload download : artifactDownloads) {
+          if (router.isRoutedElsewhere(download.getArtifact().getGroupId(), repository)) {
+            download.setException(new SkippedArtifactException(download.getArtifact(), repository,
+                router.route(download.getArtifact().getGroupId())));
+          } else {
+            artifacts.add(download);
+          }
+        }
+      }
+
+      List<MetadataDownload> metadata = new ArrayList<MetadataDownload>();
+      if (metadataDownloads != null) {
+        for (MetadataDownload download : metadataDownloads) {
+          if (router.isRoutedElsewhere(download.getMetadata().getGroupId(), repository)) {
+            download.setException(new SkippedMetadataException(download.getMetadata(), repository,
+                router.route(download.getMetadata().getGroupId())));
+          } else {
+            metadata.add(download);
+          }
+        }
+      }
+
+      delegate.get(artifacts, metadata);
+
+      // attachments like javadoc are often missing, only main artifacts disprove a route
+      for (ArtifactDownload download : artifacts) {
+        if (download.getException() instanceof ArtifactNotFoundException
+            && download.getArtifact().getClassifier().length() == 0) {
+          router.missed(download.getArtifact().getGroupId(), repository);
+        }
+      }
+    }
+
+    @Override
+    public void put(Collection<? extends ArtifactUpload> artifactUploads,
+        Collection<? extends MetadataUpload> metadataUploads) {
+      delegate.put(artifactUploads, metadataUploads);
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+
+    @Override
+    public String toString() {
+      return delegate.toString();
+    }
+  }
+
+  /**
+   * An artifact not requested from a repository, as its groupId is routed to
+   * another one.
+   */
+  public static class SkippedArtifactException extends ArtifactNotFoundException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param artifact
+     *          the skipped artifact
+     * @param repository
+     *          the skipped repository
+     * @param route
+     *          the id of the repository serving the groupId
+     */
+    public SkippedArtifactException(Artifact artifact, RemoteRepository repository, String route) {
+      super(artifact, repository, "Skipped " + artifact + ", it is routed to '" + route + "'");
+    }
+  }
+
+  /**
+   * Metadata not requested from a repository, as its groupId is routed to
+   * another one.
+   */
+  public static class SkippedMetadataException extends MetadataNotFoundException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param metadata
+     *          the skipped metadata
+     * @param repository
+     *          the skipped repository
+     * @param route
+     *          the id of the repository serving the groupId
+     */
+    public SkippedMetadataException(Metadata metadata, RemoteRepository repository, String route) {
+      super(metadata, repository, "Skipped " + metadata + ", it is routed to '" + route + "'");
+    }
+  }
+}
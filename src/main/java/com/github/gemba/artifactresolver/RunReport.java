@@ -0,0 +1,308 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.repository.ArtifactRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.eclipse.aether.transfer.TransferEvent;
+import org.eclipse.aether.transfer.TransferListener;
+import org.eclipse.aether.transfer.TransferResource;
+import org.json.simple.JSONValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures where a run spends its time: the duration of each phase and, per
+ * remote repository, the requests, the transferred bytes and the latency of
+ * the transfers. The report is written as JSON.
+ * <p>
+ * Requests and misses are counted from the repository events. Artifacts the
+ * {@link RepositoryRouter} did not request from a repository are counted as
+ * skipped, not as its requests. Bytes and latencies are counted from the
+ * transfers, which include the checksum files.
+ *
+ * @author Gemba
+ */
+public class RunReport extends AbstractRepositoryListener implements TransferListener {
+
+  private static final Logger log = LoggerFactory.getLogger(RunReport.class);
+
+  /**
+   * The measured phases of a run.
+   */
+  public enum Phase {
+    /** reading the POMs of a dependency graph */
+    COLLECT,
+    /** downloading the artifacts of a dependency graph or a lock file */
+    RESOLVE,
+    /** downloading the javadoc and sources */
+    ATTACHMENTS
+  }
+
+  // upper bounds of the latency buckets in milliseconds
+  private static final long[] LATENCY_BOUNDS = { 10, 50, 100, 500, 1000, 5000 };
+
+  private final long startTime = System.currentTimeMillis();
+
+  private final Map<Phase, Timer> phases = new TreeMap<Phase, Timer>();
+
+  // repository URL -> repository id
+  private final Map<String, String> repositoryIds = new HashMap<String, String>();
+
+  // repository id -> statistics
+  private final Map<String, RepositoryStats> repositories = new TreeMap<String, RepositoryStats>();
+
+  private ResolutionSummary summary;
+
+  /**
+   * @param remoteRepos
+   *          the repositories of the run
+   */
+  public RunReport(Collection<RemoteRepository> remoteRepos) {
+    for (Phase phase : Phase.values()) {
+      phases.put(phase, new Timer());
+    }
+    for (RemoteRepository repository : remoteRepos) {
+      repositoryIds.put(normalizeUrl(repository.getUrl()), repository.getId());
+      repositories.put(repository.getId(), new RepositoryStats());
+    }
+  }
+
+  /**
+   * Adds the outcome of each root artifact to the report.
+   *
+   * @param summary
+   *          the summary of the run, <code>null</code> to leave it out
+   */
+  public void setSummary(ResolutionSummary summary) {
+    this.summary = summary;
+  }
+
+  /**
+   * Records one execution of a phase.
+   *
+   * @param phase
+   *          the executed phase
+   * @param startNanos
+   *          the start of the execution as given by {@link System#nanoTime()}
+   */
+  public void phaseFinished(Phase phase, long startNanos) {
+    long nanos = System.nanoTime() - startNanos;
+    Timer timer = phases.get(phase);
+    synchronized (timer) {
+      timer.count++;
+      timer.nanos += nanos;
+      timer.maxNanos = Math.max(timer.maxNanos, nanos);
+    }
+  }
+
+  @Override
+  public void artifactDownloaded(RepositoryEvent event) {
+    requested(event.getRepository(), event.getException());
+  }
+
+  @Override
+  public void metadataDownloaded(RepositoryEvent event) {
+    requested(event.getRepository(), event.getException());
+  }
+
+  @Override
+  public void transferInitiated(TransferEvent event) {
+  }
+
+  @Override
+  public void transferStarted(TransferEvent event) {
+  }
+
+  @Override
+  public void transferProgressed(TransferEvent event) {
+  }
+
+  @Override
+  public void transferCorrupted(TransferEvent event) {
+  }
+
+  @Override
+  public void transferSucceeded(TransferEvent event) {
+    transferred(event, false);
+  }
+
+  @Override
+  public void transferFailed(TransferEvent event) {
+    transferred(event, true);
+  }
+
+  /**
+   * Writes the report as JSON.
+   *
+   * @param file
+   *          the file to write
+   * @throws IOException
+   *           if the file is not writable
+   */
+  public void write(File file) throws IOException {
+    Map<String, Object> json = new LinkedHashMap<String, Object>();
+    json.put("started", startTime);
+    json.put("durationMillis", System.currentTimeMillis() - startTime);
+
+    Map<String, Object> phasesJson = new LinkedHashMap<String, Object>();
+    for (Map.Entry<Phase, Timer> entry : phases.entrySet()) {
+      phasesJson.put(entry.getKey().name().toLowerCase(), entry.getValue().toJson());
+    }
+    json.put("phases", phasesJson);
+
+    Map<String, Object> repositoriesJson = new LinkedHashMap<String, Object>();
+    synchronized (repositories) {
+      for (Map.Entry<String, RepositoryStats> entry : repositories.entrySet()) {
+        repositoriesJson.put(entry.getKey(), entry.getValue().toJson());
+      }
+    }
+    json.put("repositories", repositoriesJson);
+
+    if (summary != null) {
+      json.put("roots", summary.toJson());
+    }
+
+    Writer writer = null;
+    try {
+      writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      writer.write(JSONValue.toJSONString(json));
+      writer.write('\n');
+    } finally {
+      IOUtils.closeQuietly(writer);
+    }
+    log.debug("Run report written to {}", file);
+  }
+
+  private void requested(ArtifactRepository repository, Exception exception) {
+    if (!(repository instanceof RemoteRepository)) {
+      return;
+    }
+    RepositoryStats stats = getStats(repository.getId());
+    synchronized (stats) {
+      if (exception instanceof RoutingRepositoryConnectorFactory.SkippedArtifactException
+          || exception instanceof RoutingRepositoryConnectorFactory.SkippedMetadataException) {
+        stats.skipped++;
+        return;
+      }
+      stats.requests++;
+      if (exception instanceof ArtifactNotFoundException || exception instanceof MetadataNotFoundException) {
+        stats.notFound++;
+      } else if (exception != null) {
+        stats.failed++;
+      }
+    }
+  }
+
+  private void transferred(TransferEvent event, boolean failed) {
+    TransferResource resource = event.getResource();
+    String url = normalizeUrl(resource.getRepositoryUrl());
+    String id = repositoryIds.get(url);
+    RepositoryStats stats = getStats(id != null ? id : url);
+
+    long latency = System.currentTimeMillis() - resource.getTransferStartTime();
+    int bucket = 0;
+    while (bucket < LATENCY_BOUNDS.length && latency >= LATENCY_BOUNDS[bucket]) {
+      bucket++;
+    }
+
+    synchronized (stats) {
+      stats.transfers++;
+      if (failed) {
+        stats.failedTransfers++;
+      }
+      stats.bytes += event.getTransferredBytes();
+      stats.latencies[bucket]++;
+    }
+  }
+
+  private RepositoryStats getStats(String id) {
+    synchronized (repositories) {
+      RepositoryStats stats = repositories.get(id);
+      if (stats == null) {
+        stats = new RepositoryStats();
+        repositories.put(id, stats);
+      }
+      return stats;
+    }
+  }
+
+  private static String normalizeUrl(String url) {
+    return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+  }
+
+  /**
+   * Executions and duration of a phase.
+   */
+  private static class Timer {
+
+    private long count;
+    private long nanos;
+    private long maxNanos;
+
+    synchronized Map<String, Object> toJson() {
+      Map<String, Object> json = new LinkedHashMap<String, Object>();
+      json.put("count", count);
+      json.put("millis", TimeUnit.NANOSECONDS.toMillis(nanos));
+      json.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(maxNanos));
+      return json;
+    }
+  }
+
+  /**
+   * Requests and transfers of a repository.
+   */
+  private static class RepositoryStats {
+
+    private long requests;
+    private long skipped;
+    private long notFound;
+    private long failed;
+    private long transfers;
+    private long failedTransfers;
+    private long bytes;
+    private final long[] latencies = new long[LATENCY_BOUNDS.length + 1];
+
+    synchronized Map<String, Object> toJson() {
+      Map<String, Object> json = new LinkedHashMap<String, Object>();
+      json.put("requests", requests);
+      json.put("skipped", skipped);
+      json.put("notFound", notFound);
+      json.put("notFoundRate", requests == 0 ? 0.0 : (double) notFound / requests);
+      json.put("failed", failed);
+      json.put("transfers", transfers);
+      json.put("failedTransfers", failedTransfers);
+      json.put("bytes", bytes);
+
+      Map<String, Object> histogram = new LinkedHashMap<String, Object>();
+      for (int i = 0; i < LATENCY_BOUNDS.length; i++) {
+        histogram.put("<" + LATENCY_BOUNDS[i], latencies[i]);
+      }
+      histogram.put(">=" + LATENCY_BOUNDS[LATENCY_BOUNDS.length - 1], latencies[LATENCY_BOUNDS.length]);
+      json.put("latencyMillis", histogram);
+      return json;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.LocalArtifactRegistration;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+import org.eclipse.aether.repository.LocalMetadataRegistration;
+import org.eclipse.aether.repository.LocalMetadataRequest;
+import org.eclipse.aether.repository.LocalMetadataResult;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local repository manager sharing release artifacts through the
+ * {@link ArtifactStore} set in the session data. A release artifact missing
+ * in the download directory is linked from the store before it is requested
+ * from a remote repository; downloaded artifacts are added to the store.
+ * Without a store in the session, the wrapped manager does all the work.
+ *
+ * @author Gemba
+ */
+public class StoreLocalRepositoryManager implements LocalRepositoryManager {
+
+  private static final Logger log = LoggerFactory.getLogger(StoreLocalRepositoryManager.class);
+
+  private final LocalRepositoryManager delegate;
+
+  /**
+   * @param delegate
+   *          the manager doing the actual work
+   */
+  public StoreLocalRepositoryManager(LocalRepositoryManager delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public LocalRepository getRepository() {
+    return delegate.getRepository();
+  }
+
+  @Override
+  public String getPathForLocalArtifact(Artifact artifact) {
+    return delegate.getPathForLocalArtifact(artifact);
+  }
+
+  @Override
+  public String getPathForRemoteArtifact(Artifact artifact, RemoteRepository repository, String context) {
+    return delegate.getPathForRemoteArtifact(artifact, repository, context);
+  }
+
+  @Override
+  public String getPathForLocalMetadata(Metadata metadata) {
+    return delegate.getPathForLocalMetadata(metadata);
+  }
+
+  @Override
+  public String getPathForRemoteMetadata(Metadata metadata, RemoteRepository repository, String context) {
+    return delegate.getPathForRemoteMetadata(metadata, repository, context);
+  }
+
+  @Override
+  public LocalArtifactResult find(RepositorySystemSession session, LocalArtifactRequest request) {
+    LocalArtifactResult result = delegate.find(session, request);
+    ArtifactStore store = (ArtifactStore) session.getData().get(ArtifactStore.class);
+    Artifact artifact = request.getArtifact();
+    if (store == null || artifact.isSnapshot()) {
+      return result;
+    }
+
+    String path = getPathForLocalArtifact(artifact);
+    File file = new File(getRepository().getBasedir(), path);
+    if (result.isAvailable()) {
+      // shares the downloads of earlier runs
+      if (file.isFile() && !store.contains(path)) {
+        store.put(path, file);
+      }
+    } else if (!file.exists() && store.link(path, file)) {
+      log.debug("Linked {} from the store", artifact);
+      // an untracked file counts as installed locally
+      result = delegate.find(session, request);
+    }
+    return result;
+  }
+
+  @Override
+  public void add(RepositorySystemSession session, LocalArtifactRegistration request) {
+    delegate.add(session, request);
+
+    ArtifactStore store = (ArtifactStore) session.getData().get(ArtifactStore.class);
+    Artifact artifact = request.getArtifact();
+    if (store != null && !artifact.isSnapshot()) {
+      String path = getPathForLocalArtifact(artifact);
+      File file = new File(getRepository().getBasedir(), path);
+      if (file.isFile()) {
+        store.put(path, file);
+      }
+    }
+  }
+
+  @Override
+  public LocalMetadataResult find(RepositorySystemSession session, LocalMetadataRequest request) {
+    return delegate.find(session, request);
+  }
+
+  @Override
+  public void add(RepositorySystemSession session, LocalMetadataRegistration request) {
+    delegate.add(session, request);
+  }
+
+  @Override
+  public String toString() {
+    return delegate.toString();
+  }
+}
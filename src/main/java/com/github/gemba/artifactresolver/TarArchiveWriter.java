@@ -0,0 +1,184 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes a POSIX ustar archive, optionally gzipped. The content of the files
+ * is copied with {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+ * which copies in the kernel when writing an uncompressed archive.
+ *
+ * @author Gemba
+ */
+public class TarArchiveWriter extends ArchiveWriter {
+
+  private static final int BLOCK_SIZE = 512;
+
+  private static final int NAME_LENGTH = 100;
+  private static final int PREFIX_LENGTH = 155;
+
+  // largest size of the 11 octal digits of the size field
+  private static final long MAX_SIZE = 077777777777L;
+
+  private final FileOutputStream fileOut;
+  private final GZIPOutputStream gzipOut;
+  private final WritableByteChannel out;
+
+  private final ByteBuffer header = ByteBuffer.allocate(BLOCK_SIZE);
+
+  /**
+   * @param file
+   *          the archive to create
+   * @param gzip
+   *          <code>true</code> to compress the archive
+   * @throws IOException
+   *           if the file is not writable
+   */
+  public TarArchiveWriter(File file, boolean gzip) throws IOException {
+    fileOut = new FileOutputStream(file);
+    if (gzip) {
+      gzipOut = new GZIPOutputStream(fileOut, 64 * 1024);
+      out = Channels.newChannel(gzipOut);
+    } else {
+      gzipOut = null;
+      out = fileOut.getChannel();
+    }
+  }
+
+  @Override
+  public void putFile(String path, File file) throws IOException {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      FileChannel channel = in.getChannel();
+      long size = channel.size();
+      writeHeader(path, size, file.lastModified());
+      for (long position = 0; position < size;) {
+        position += channel.transferTo(position, size - position, out);
+      }
+      writePadding(size);
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
+  @Override
+  public void putBytes(String path, byte[] content) throws IOException {
+    writeHeader(path, content.length, System.currentTimeMillis());
+    writeFully(ByteBuffer.wrap(content));
+    writePadding(content.length);
+  }
+
+  /**
+   * Ends the archive with two empty blocks.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      writeFully(ByteBuffer.allocate(2 * BLOCK_SIZE));
+      if (gzipOut != null) {
+        gzipOut.finish();
+      }
+    } finally {
+      IOUtils.closeQuietly(out);
+      IOUtils.closeQuietly(fileOut);
+    }
+  }
+
+  private void writeHeader(String path, long size, long modified) throws IOException {
+    if (size > MAX_SIZE) {
+      throw new IOException("File too large for a tar archive: " + path);
+    }
+    byte[] bytes = path.getBytes("UTF-8");
+    int split = 0;
+    if (bytes.length > NAME_LENGTH) {
+      // the prefix ends at a '/' and takes what does not fit into the name
+      split = bytes.length - NAME_LENGTH - 1;
+      while (split < bytes.length && bytes[split] != '/') {
+        split++;
+      }
+      if (split >= bytes.length || split > PREFIX_LENGTH) {
+        throw new IOException("Path too long for a tar archive: " + path);
+      }
+    }
+
+    header.clear();
+    for (int i = 0; i < BLOCK_SIZE; i++) {
+      header.put(i, (byte) 0);
+    }
+    if (split == 0) {
+      putBytes(0, bytes, 0, bytes.length);
+    } else {
+      putBytes(0, bytes, split + 1, bytes.length - split - 1);
+      putBytes(345, bytes, 0, split);
+    }
+    putOctal(100, 8, 0644);
+    putOctal(108, 8, 0);
+    putOctal(116, 8, 0);
+    putOctal(124, 12, size);
+    putOctal(136, 12, modified / 1000);
+    header.put(156, (byte) '0');
+    putBytes(257, "ustar\0".getBytes("US-ASCII"), 0, 6);
+    putBytes(263, "00".getBytes("US-ASCII"), 0, 2);
+
+    // the checksum is computed with blanks in its own field
+    for (int i = 148; i < 156; i++) {
+      header.put(i, (byte) ' ');
+    }
+    long checksum = 0;
+    for (int i = 0; i < BLOCK_SIZE; i++) {
+      checksum += header.get(i) & 0xff;
+    }
+    putOctal(148, 7, checksum);
+
+    writeFully(header);
+  }
+
+  private void putBytes(int offset, byte[] bytes, int from, int length) {
+    for (int i = 0; i < length; i++) {
+      header.put(offset + i, bytes[from + i]);
+    }
+  }
+
+  /**
+   * Writes a zero terminated octal number, padded with leading zeros.
+   */
+  private void putOctal(int offset, int length, long value) {
+    String octal = Long.toOctalString(value);
+    int digits = length - 1;
+    for (int i = 0; i < digits; i++) {
+      int index = octal.length() - digits + i;
+      header.put(offset + i, (byte) (index < 0 ? '0' : octal.charAt(index)));
+    }
+    header.put(offset + digits, (byte) 0);
+  }
+
+  private void writePadding(long size) throws IOException {
+    int remainder = (int) (size % BLOCK_SIZE);
+    if (remainder > 0) {
+      writeFully(ByteBuffer.allocate(BLOCK_SIZE - remainder));
+    }
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException {
+    buffer.rewind();
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+/**
+ * The formats the dependency trees can be rendered in. A printer collects the
+ * rendered tree in a buffer, which its <code>toString()</code> returns.
+ *
+ * @author Gemba
+ */
+public enum TreeFormat {
+
+  /** indented text, see {@link DependencyGraphPrinter} */
+  TEXT {
+    @Override
+    public DependencyGraph.Visitor newPrinter() {
+      return new DependencyGraphPrinter();
+    }
+  },
+
+  /** Graphviz digraph, see {@link DotGraphPrinter} */
+  DOT {
+    @Override
+    public DependencyGraph.Visitor newPrinter() {
+      return new DotGraphPrinter();
+    }
+  },
+
+  /** one line of JSON, see {@link JsonGraphPrinter} */
+  JSON {
+    @Override
+    public DependencyGraph.Visitor newPrinter() {
+      return new JsonGraphPrinter();
+    }
+  };
+
+  /**
+   * @return a new printer which renders one tree in this format
+   */
+  public abstract DependencyGraph.Visitor newPrinter();
+}
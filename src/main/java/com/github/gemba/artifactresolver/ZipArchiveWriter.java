@@ -0,0 +1,69 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes a zip archive. Jars are compressed already, so the entries are
+ * deflated with the fastest level.
+ *
+ * @author Gemba
+ */
+public class ZipArchiveWriter extends ArchiveWriter {
+
+  private final ZipOutputStream zip;
+
+  /**
+   * @param file
+   *          the archive to create
+   * @throws IOException
+   *           if the file is not writable
+   */
+  public ZipArchiveWriter(File file) throws IOException {
+    zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+    zip.setLevel(Deflater.BEST_SPEED);
+  }
+
+  @Override
+  public void putFile(String path, File file) throws IOException {
+    ZipEntry entry = new ZipEntry(path);
+    entry.setTime(file.lastModified());
+    zip.putNextEntry(entry);
+    InputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      IOUtils.copyLarge(in, zip);
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+    zip.closeEntry();
+  }
+
+  @Override
+  public void putBytes(String path, byte[] content) throws IOException {
+    zip.putNextEntry(new ZipEntry(path));
+    zip.write(content);
+    zip.closeEntry();
+  }
+
+  @Override
+  public void close() throws IOException {
+    zip.close();
+  }
+}
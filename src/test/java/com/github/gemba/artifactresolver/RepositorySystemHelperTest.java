@@ -0,0 +1,147 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.DependencyRequest;
+import org.eclipse.aether.util.artifact.JavaScopes;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Resolves many roots with one {@link RepositorySystemHelper} from several
+ * threads against a <code>file://</code> repository.
+ *
+ * @author Gemba
+ */
+public class RepositorySystemHelperTest {
+
+  private static final int THREADS = 8;
+  private static final int ROOTS = 64;
+  private static final int LIBS = 16;
+  private static final int BASES = 4;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private TestRepository repository;
+
+  @Before
+  public void setUp() throws Exception {
+    repository = new TestRepository(folder.newFolder("repo"));
+    for (int i = 0; i < BASES; i++) {
+      repository.add("base" + i, jar("base" + i));
+    }
+    for (int i = 0; i < LIBS; i++) {
+      repository.add("lib" + i, jar("lib" + i), "base" + i % BASES);
+    }
+    for (int i = 0; i < ROOTS; i++) {
+      repository.add("app" + i, jar("app" + i), "lib" + i % LIBS, "lib" + (i + 5) % LIBS);
+    }
+  }
+
+  @Test
+  public void resolvesConcurrently() throws Exception {
+    final RepositorySystemHelper helper = new RepositorySystemHelper(folder.newFolder("local-repo").getPath(),
+        Collections.singletonList(repository.newRemoteRepository("fixture")));
+
+    // every root is resolved by several threads at once
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+    for (int round = 0; round < 4; round++) {
+      for (int i = 0; i < ROOTS; i++) {
+        final int root = i;
+        tasks.add(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            start.await();
+            return resolve(helper, root);
+          }
+        });
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<String>> results = new ArrayList<Future<String>>();
+      for (Callable<String> task : tasks) {
+        results.add(executor.submit(task));
+      }
+      start.countDown();
+      for (int i = 0; i < results.size(); i++) {
+        assertEquals(expectedTree(i % ROOTS), results.get(i).get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Collects and resolves a root and checks the content of each resolved jar.
+   *
+   * @return the collected tree, e.g. <code>app1(lib1(base1),lib6(base2))</code>
+   */
+  private static String resolve(RepositorySystemHelper helper, int root) throws Exception {
+    DefaultArtifact artifact = new DefaultArtifact(TestRepository.GROUP_ID, "app" + root, "jar",
+        TestRepository.VERSION);
+    DependencyNode node = helper.collectDependencies(new Dependency(artifact, JavaScopes.COMPILE));
+
+    List<ArtifactResult> results = helper.resolveDependencies(new DependencyRequest(node, null))
+        .getArtifactResults();
+    assertEquals(5, results.size());
+    for (ArtifactResult result : results) {
+      Artifact resolved = result.getArtifact();
+      assertEquals(resolved.getArtifactId(), FileUtils.readFileToString(resolved.getFile(), "UTF-8"));
+    }
+    return toTree(node);
+  }
+
+  private static String toTree(DependencyNode node) {
+    StringBuilder tree = new StringBuilder(node.getArtifact().getArtifactId());
+    if (!node.getChildren().isEmpty()) {
+      tree.append('(');
+      for (int i = 0; i < node.getChildren().size(); i++) {
+        if (i > 0) {
+          tree.append(',');
+        }
+        tree.append(toTree(node.getChildren().get(i)));
+      }
+      tree.append(')');
+    }
+    return tree.toString();
+  }
+
+  private static String expectedTree(int root) {
+    int first = root % LIBS;
+    int second = (root + 5) % LIBS;
+    return "app" + root + "(lib" + first + "(base" + first % BASES + "),lib" + second + "(base" + second % BASES
+        + "))";
+  }
+
+  private static byte[] jar(String artifactId) throws Exception {
+    return artifactId.getBytes("UTF-8");
+  }
+}
@@ -0,0 +1,174 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.transport.GetTask;
+import org.eclipse.aether.spi.connector.transport.Transporter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Downloads from a local HTTP stub which drops the connection in the middle
+ * of the body, with both {@link HttpTransport}s.
+ *
+ * @author Gemba
+ */
+public class RetryingTransporterFactoryTest {
+
+  private static final int SIZE = 256 * 1024;
+  private static final int DROP_AFTER = 64 * 1024;
+  private static final int DROPS = 2;
+
+  private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final byte[] content = new byte[SIZE];
+
+  private HttpServer server;
+
+  // Range header of each request, null without
+  private final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+
+  // true if the stub answers range requests
+  private volatile boolean acceptRanges;
+
+  @Before
+  public void startServer() throws IOException {
+    new Random(42).nextBytes(content);
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        ranges.add(range);
+
+        int start = 0;
+        Matcher matcher = range == null ? null : RANGE.matcher(range);
+        if (acceptRanges && matcher != null && matcher.matches()) {
+          start = Integer.parseInt(matcher.group(1));
+          exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (SIZE - 1) + "/" + SIZE);
+          exchange.sendResponseHeaders(206, SIZE - start);
+        } else {
+          exchange.sendResponseHeaders(200, SIZE);
+        }
+
+        OutputStream body = exchange.getResponseBody();
+        try {
+          if (ranges.size() <= DROPS) {
+            body.write(content, start, DROP_AFTER);
+            body.flush();
+            // closing before the announced length drops the connection
+            exchange.close();
+            return;
+          }
+          body.write(content, start, SIZE - start);
+          body.close();
+        } catch (IOException ioe) {
+          // the dropped connection
+        }
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  public void resumesWithRangeRequests() throws Exception {
+    acceptRanges = true;
+    for (HttpTransport transport : HttpTransport.values()) {
+      ranges.clear();
+      assertArrayEquals(transport.name(), content, download(transport));
+
+      assertEquals(transport.name(), DROPS + 1, ranges.size());
+      assertNull(transport.name(), ranges.get(0));
+      for (int i = 1; i < ranges.size(); i++) {
+        assertTrue(transport.name() + ": " + ranges, getOffset(ranges.get(i)) > getOffset(ranges.get(i - 1)));
+      }
+    }
+  }
+
+  @Test
+  public void restartsWithoutRangeSupport() throws Exception {
+    acceptRanges = false;
+    for (HttpTransport transport : HttpTransport.values()) {
+      ranges.clear();
+      assertArrayEquals(transport.name(), content, download(transport));
+
+      assertEquals(transport.name(), DROPS + 1, ranges.size());
+      assertNull(transport.name(), ranges.get(0));
+      assertTrue(transport.name() + ": " + ranges, getOffset(ranges.get(1)) > 0);
+    }
+  }
+
+  private byte[] download(HttpTransport transport) throws Exception {
+    DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
+    session.getData().set(RetryingTransporterFactory.TRANSPORT_KEY, transport);
+    session.getData().set(RetryingTransporterFactory.RETRIES_KEY, Integer.valueOf(DROPS));
+
+    RetryingTransporterFactory factory = new RetryingTransporterFactory();
+    factory.initService(MavenRepositorySystemUtils.newServiceLocator());
+    RemoteRepository repository = new RemoteRepository.Builder("stub", "default",
+        "http://localhost:" + server.getAddress().getPort() + "/repo/").build();
+
+    File file = new File(folder.getRoot(), transport.name() + ".jar");
+    Transporter transporter = factory.newInstance(session, repository);
+    try {
+      transporter.get(new GetTask(URI.create("test/a/1.0/a-1.0.jar")).setDataFile(file));
+    } finally {
+      transporter.close();
+    }
+    return FileUtils.readFileToByteArray(file);
+  }
+
+  /**
+   * @return the first requested byte, 0 without range
+   */
+  private static long getOffset(String range) {
+    if (range == null) {
+      return 0;
+    }
+    Matcher matcher = RANGE.matcher(range);
+    assertTrue(range, matcher.matches());
+    return Long.parseLong(matcher.group(1));
+  }
+}
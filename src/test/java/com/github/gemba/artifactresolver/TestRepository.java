@@ -0,0 +1,104 @@
+package com.github.gemba.artifactresolver;
+
+/*******************************************************************************
+ * Copyright (c) 2013 by Gemba
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution (see COPYING), and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * A maven repository written into a directory by the tests. Every artifact
+ * has a POM and a jar with SHA-1 checksums.
+ *
+ * @author Gemba
+ */
+public class TestRepository {
+
+  public static final String GROUP_ID = "test.fixture";
+
+  public static final String VERSION = "1.0";
+
+  private final File basedir;
+
+  /**
+   * @param basedir
+   *          the directory of the repository
+   */
+  public TestRepository(File basedir) {
+    this.basedir = basedir;
+  }
+
+  /**
+   * Writes an artifact.
+   *
+   * @param artifactId
+   *          the artifactId of the artifact
+   * @param jar
+   *          the content of the jar
+   * @param dependencies
+   *          the artifactIds of the compile dependencies, all of the same
+   *          groupId and version
+   * @return the artifact
+   * @throws IOException
+   *           if the repository is not writable
+   */
+  public DefaultArtifact add(String artifactId, byte[] jar, String... dependencies) throws IOException {
+    StringBuilder pom = new StringBuilder();
+    pom.append("<project><modelVersion>4.0.0</modelVersion>");
+    pom.append("<groupId>").append(GROUP_ID).append("</groupId>");
+    pom.append("<artifactId>").append(artifactId).append("</artifactId>");
+    pom.append("<version>").append(VERSION).append("</version><dependencies>");
+    for (String dependency : dependencies) {
+      pom.append("<dependency><groupId>").append(GROUP_ID).append("</groupId>");
+      pom.append("<artifactId>").append(dependency).append("</artifactId>");
+      pom.append("<version>").append(VERSION).append("</version></dependency>");
+    }
+    pom.append("</dependencies></project>");
+
+    writeFile(getPath(artifactId, "pom"), pom.toString().getBytes("UTF-8"));
+    writeFile(getPath(artifactId, "jar"), jar);
+    return new DefaultArtifact(GROUP_ID, artifactId, "jar", VERSION);
+  }
+
+  /**
+   * @param artifactId
+   *          the artifactId of an artifact
+   * @param extension
+   *          the extension of the file
+   * @return the path of the file relative to the repository
+   */
+  public String getPath(String artifactId, String extension) {
+    return GROUP_ID.replace('.', '/') + "/" + artifactId + "/" + VERSION + "/" + artifactId + "-" + VERSION + "."
+        + extension;
+  }
+
+  /**
+   * @return the directory of the repository
+   */
+  public File getBasedir() {
+    return basedir;
+  }
+
+  /**
+   * @param id
+   *          the id of the repository
+   * @return the repository as <code>file://</code> URL
+   */
+  public RemoteRepository newRemoteRepository(String id) {
+    return new RemoteRepository.Builder(id, "default", basedir.toURI().toString()).build();
+  }
+
+  private void writeFile(String path, byte[] content) throws IOException {
+    File file = new File(basedir, path);
+    FileUtils.writeByteArrayToFile(file, content);
+    FileUtils.writeStringToFile(new File(file.getPath() + ".sha1"), Checksums.sha1(file), "UTF-8");
+  }
+}